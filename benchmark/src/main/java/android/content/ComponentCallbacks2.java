@@ -0,0 +1,18 @@
+package android.content;
+
+import android.content.res.Configuration;
+
+/**
+ * JVM stand-in for the Android interface, a benchmark never trims memory
+ */
+public interface ComponentCallbacks2 {
+    int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    int TRIM_MEMORY_BACKGROUND = 40;
+
+    void onTrimMemory(int level);
+
+    void onLowMemory();
+
+    void onConfigurationChanged(Configuration newConfig);
+}
@@ -0,0 +1,10 @@
+package android.content;
+
+/**
+ * JVM stand-in for the Android class, only what the listing cache registers with
+ */
+public abstract class Context {
+    public abstract Context getApplicationContext();
+
+    public abstract void registerComponentCallbacks(ComponentCallbacks2 callback);
+}
@@ -0,0 +1,7 @@
+package android.content.res;
+
+/**
+ * JVM stand-in for the Android class, so the listing cache compiles into the benchmarks
+ */
+public class Configuration {
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class. The JVM has java.nio.file, so it reports API 26.
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.O;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int LOLLIPOP = 21;
+        public static final int O = 26;
+    }
+}
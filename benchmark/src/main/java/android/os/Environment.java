@@ -0,0 +1,12 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for the Android class, external storage is the user's home folder
+ */
+public class Environment {
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("user.home"));
+    }
+}
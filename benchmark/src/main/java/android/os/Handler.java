@@ -0,0 +1,24 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class, runs posted tasks right away on the posting thread
+ */
+public class Handler {
+    public Handler(Looper looper) {
+    }
+
+    public boolean post(Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+
+    public boolean postDelayed(Runnable runnable, long delayMillis) {
+        return post(runnable);
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+    }
+
+    public void removeCallbacksAndMessages(Object token) {
+    }
+}
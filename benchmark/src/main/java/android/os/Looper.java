@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class, there is no main thread to post to in a benchmark
+ */
+public class Looper {
+    private static final Looper MAIN = new Looper();
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+}
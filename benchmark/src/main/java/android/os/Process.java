@@ -0,0 +1,11 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class, thread priorities are left alone
+ */
+public class Process {
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static void setThreadPriority(int priority) {
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class, the JVM has no deep sleep so uptime is elapsed time
+ */
+public class SystemClock {
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long uptimeMillis() {
+        return elapsedRealtime();
+    }
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
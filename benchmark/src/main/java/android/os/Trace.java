@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class, there is no system trace to write sections to
+ */
+public class Trace {
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
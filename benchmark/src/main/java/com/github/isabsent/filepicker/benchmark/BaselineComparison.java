@@ -0,0 +1,124 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prints every score of a JMH CSV result file next to the same score of a baseline file, with
+ * the relative change. Changes for the worse beyond {@link #THRESHOLD} are marked; scores in a
+ * unit per second get worse when they drop, all others (times, bytes per operation) when they grow.
+ * <p>
+ * Usage: <code>BaselineComparison baseline.csv results.csv</code>
+ */
+public class BaselineComparison {
+    private static final double THRESHOLD = 0.10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <results.csv>");
+            System.exit(2);
+        }
+        Map<String, Row> baseline = read(args[0]);
+        Map<String, Row> results = read(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format(Locale.US, "%-90s %14s %14s %8s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Row result : results.values()) {
+            String key = result.key;
+            double current = result.score;
+            Row base = baseline.get(key);
+            if (base == null) {
+                System.out.println(String.format(Locale.US, "%-90s %14s %14.1f %8s", key, "-", current, "new"));
+                continue;
+            }
+            double change = base.score != 0 ? (current - base.score) / base.score : 0;
+            boolean higherIsBetter = result.unit.endsWith("/s");
+            boolean worse = higherIsBetter ? change < -THRESHOLD : change > THRESHOLD;
+            if (worse)
+                regressions++;
+            System.out.println(String.format(Locale.US, "%-90s %14.1f %14.1f %+7.1f%%%s",
+                    key, base.score, current, change * 100, worse ? " !" : ""));
+        }
+        System.out.println(regressions + " scores more than " + Math.round(THRESHOLD * 100) + "% worse than the baseline");
+    }
+
+    private static class Row {
+        String key;
+        double score;
+        String unit;
+    }
+
+    /**
+     * @return rows by benchmark name and parameters
+     */
+    private static Map<String, Row> read(String path) throws IOException {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            List<String> header = parse(reader.readLine());
+            int benchmark = header.indexOf("Benchmark");
+            int score = header.indexOf("Score");
+            int unit = header.indexOf("Unit");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = parse(line);
+                if (fields.size() < header.size())
+                    continue;
+                StringBuilder key = new StringBuilder(fields.get(benchmark));
+                for (int i = 0; i < header.size(); i++)
+                    if (header.get(i).startsWith("Param: "))
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                Row row = new Row();
+                row.key = key.toString();
+                row.score = parseDouble(fields.get(score));
+                row.unit = fields.get(unit);
+                rows.put(row.key, row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Splits a CSV line, fields may be quoted
+     */
+    private static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        if (line == null)
+            return fields;
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else
+                    quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else
+                field.append(c);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
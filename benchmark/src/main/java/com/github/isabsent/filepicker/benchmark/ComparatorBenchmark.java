@@ -0,0 +1,98 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import com.github.isabsent.filepicker.comparator.FileNameComparator;
+import com.github.isabsent.filepicker.comparator.NaturalSortKey;
+import com.github.isabsent.filepicker.comparator.SortKey;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.listing.ListingSorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Natural name comparison and sorting by name. One operation covers the whole name set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComparatorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    @Param({"ASCII", "NUMERIC", "UNICODE", "MIXED"})
+    public Names.Kind kind;
+
+    private String[] names;
+    private File parent;
+
+    @Setup
+    public void setUp() {
+        names = Names.generate(kind, count, 42);
+        parent = new File("/storage/emulated/0/DCIM");
+    }
+
+    /**
+     * The string based comparison, every call splits and collates both names again
+     */
+    @Benchmark
+    public void compareNatural(Blackhole blackhole) {
+        for (int i = 1; i < names.length; i++)
+            blackhole.consume(FileNameComparator.compareNatural(names[i - 1], names[i]));
+    }
+
+    @Benchmark
+    public void buildSortKeys(Blackhole blackhole) {
+        for (String name : names)
+            blackhole.consume(NaturalSortKey.of(name));
+    }
+
+    /**
+     * Fresh entries for every operation, so the sort keys are built as when a folder is listed
+     */
+    @Benchmark
+    public List<FileEntry> sortByNameCollections() {
+        List<FileEntry> entries = newEntries();
+        Collections.sort(entries, new FileNameComparator(true));
+        return entries;
+    }
+
+    @Benchmark
+    public List<FileEntry> sortByNameListingSorter() {
+        List<FileEntry> entries = newEntries();
+        ListingSorter.sort(entries, SortKey.NAME, true);
+        return entries;
+    }
+
+    @Benchmark
+    public List<FileEntry> sortByExtension() {
+        List<FileEntry> entries = newEntries();
+        ListingSorter.sort(entries, SortKey.EXTENSION, true);
+        return entries;
+    }
+
+    private List<FileEntry> newEntries() {
+        List<FileEntry> entries = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++)
+            entries.add(new FileEntry(new File(parent, names[i]), i % 10 == 0, i % 10 != 0, i, i));
+        return entries;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.listing.FilterIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filter behind the adapter: building the word start index, looking a query up, narrowing
+ * the result of a shorter query, and for comparison, testing every name as a plain scan would
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+    private static final int QUERY_COUNT = 16;
+
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    @Param({"ASCII", "NUMERIC", "UNICODE", "MIXED"})
+    public Names.Kind kind;
+
+    private CompactListing listing;
+    private String[] names;
+    private FilterIndex index;
+    private String[] shortQueries = new String[QUERY_COUNT];
+    private String[] longQueries = new String[QUERY_COUNT];
+    private FilterIndex.Match[] shortMatches = new FilterIndex.Match[QUERY_COUNT];
+
+    /**
+     * Queries are the first two and three characters of names of the set, as typed by a user
+     */
+    @Setup
+    public void setUp() {
+        names = Names.generate(kind, count, 42);
+        listing = new CompactListing("/storage/emulated/0", count);
+        for (int i = 0; i < names.length; i++)
+            listing.add(names[i], i % 10 == 0, i % 10 != 0);
+        index = new FilterIndex(listing);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            String name = FilterIndex.normalize(names[i * (count / QUERY_COUNT)]);
+            shortQueries[i] = name.substring(0, Math.min(2, name.length()));
+            longQueries[i] = name.substring(0, Math.min(3, name.length()));
+            shortMatches[i] = index.search(shortQueries[i], null);
+        }
+    }
+
+    @Benchmark
+    public FilterIndex buildIndex() {
+        return new FilterIndex(listing);
+    }
+
+    /**
+     * One operation looks up all queries
+     */
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        for (String query : longQueries)
+            blackhole.consume(index.search(query, null));
+    }
+
+    @Benchmark
+    public void narrow(Blackhole blackhole) {
+        for (int i = 0; i < QUERY_COUNT; i++)
+            blackhole.consume(index.search(longQueries[i], shortMatches[i]));
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        for (String query : longQueries) {
+            int matches = 0;
+            for (String name : names)
+                if (FilterIndex.find(name, query) >= 0)
+                    matches++;
+            blackhole.consume(matches);
+        }
+    }
+}
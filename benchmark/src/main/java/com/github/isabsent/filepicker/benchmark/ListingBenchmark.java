@@ -0,0 +1,108 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import com.github.isabsent.filepicker.comparator.SortKey;
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.listing.DirectoryEnumerator;
+import com.github.isabsent.filepicker.listing.DirectoryLoader;
+import com.github.isabsent.filepicker.listing.FileEnumerator;
+import com.github.isabsent.filepicker.listing.ListingCache;
+import com.github.isabsent.filepicker.listing.ListingSorter;
+import com.github.isabsent.filepicker.listing.NioEnumerator;
+import com.github.isabsent.filepicker.storage.FileStorageProvider;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing a synthetic folder on disk: the two enumerators on their own, {@link DirectoryLoader#load}
+ * listing, sorting by name and packing into a {@link CompactListing} as the dialog does, and sorting
+ * a listing snapshot again by other keys. The {@link ListingCache} is turned off, so every load
+ * lists the folder. Entries are served from the page cache after the first run,
+ * so the figures show CPU and system call cost rather than storage speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    private SyntheticTree tree;
+    private File folder;
+    private StorageProvider storage;
+    private CompactListing listing;
+
+    @Setup
+    public void setUp() throws IOException {
+        tree = new SyntheticTree(Names.Kind.MIXED, count, 42);
+        folder = tree.getRoot();
+        storage = new FileStorageProvider(folder);
+        ListingCache.getInstance().setMaxSize(0);
+        listing = listAndSortByName();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tree.delete();
+    }
+
+    @Benchmark
+    public int enumerateFile() {
+        return enumerate(new FileEnumerator()).size();
+    }
+
+    @Benchmark
+    public int enumerateNio() {
+        return enumerate(new NioEnumerator()).size();
+    }
+
+    /**
+     * What showing a folder costs when it is not cached
+     */
+    @Benchmark
+    public CompactListing listAndSortByName() {
+        return DirectoryLoader.load(storage, folder.getAbsolutePath(), false, SortKey.NAME, true, null).listing;
+    }
+
+    @Benchmark
+    public CompactListing resortBySize() {
+        return ListingSorter.sort(storage, listing, SortKey.SIZE, false);
+    }
+
+    @Benchmark
+    public CompactListing resortByDate() {
+        return ListingSorter.sort(storage, listing, SortKey.DATE, false);
+    }
+
+    private List<FileEntry> enumerate(DirectoryEnumerator enumerator) {
+        final List<FileEntry> entries = new ArrayList<>();
+        enumerator.enumerate(folder, new DirectoryEnumerator.Visitor() {
+            @Override
+            public boolean visit(FileEntry entry) {
+                return entries.add(entry);
+            }
+        });
+        return entries;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import java.util.Random;
+
+/**
+ * Deterministic file names resembling what users keep on their devices
+ */
+public class Names {
+    public enum Kind {
+        /** Words, separators and extensions in plain ASCII */
+        ASCII,
+        /** Camera, track and date style names where digit runs decide the order */
+        NUMERIC,
+        /** Cyrillic, CJK and accented Latin names that go through the collator */
+        UNICODE,
+        /** An even mix of the other kinds */
+        MIXED
+    }
+
+    private static final String[] WORDS = {"report", "final", "draft", "backup", "photo", "invoice", "notes", "scan",
+            "project", "music", "README", "Screenshot", "archive", "copy", "New folder", "data"};
+    private static final String[] UNICODE_WORDS = {"Отчёт", "фото", "Документы", "写真", "音楽", "資料", "Über",
+            "résumé", "Ελλάδα", "café", "Niño", "Ærø", "İstanbul", "Straße", "번역", "ملف"};
+    private static final String[] EXTENSIONS = {".jpg", ".png", ".mp4", ".pdf", ".txt", ".docx", ".mp3", ".zip", ""};
+    private static final String[] SEPARATORS = {" ", "_", "-", "."};
+
+    private Names() {
+    }
+
+    /**
+     * @return count names, duplicates are rare but possible as in a real folder after a merge
+     */
+    public static String[] generate(Kind kind, int count, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+            names[i] = generate(kind == Kind.MIXED ? Kind.values()[random.nextInt(3)] : kind, random);
+        return names;
+    }
+
+    private static String generate(Kind kind, Random random) {
+        StringBuilder name = new StringBuilder();
+        switch (kind) {
+            case NUMERIC:
+                switch (random.nextInt(3)) {
+                    case 0:
+                        name.append("IMG_").append(2015 + random.nextInt(5)).append(pad(random.nextInt(13), 2))
+                                .append(pad(random.nextInt(29), 2)).append('_').append(pad(random.nextInt(1000000), 6));
+                        break;
+                    case 1:
+                        name.append(random.nextInt(30)).append(' ').append(pick(WORDS, random)).append(' ').append(random.nextInt(200));
+                        break;
+                    default:
+                        name.append(pick(WORDS, random)).append(" (").append(random.nextInt(20)).append(')')
+                                .append(pad(random.nextInt(100), 1 + random.nextInt(4)));
+                }
+                break;
+            case UNICODE:
+                name.append(pick(UNICODE_WORDS, random)).append(pick(SEPARATORS, random)).append(pick(UNICODE_WORDS, random));
+                if (random.nextBoolean())
+                    name.append(' ').append(random.nextInt(100));
+                break;
+            default:
+                int words = 1 + random.nextInt(3);
+                for (int i = 0; i < words; i++) {
+                    if (i > 0)
+                        name.append(pick(SEPARATORS, random));
+                    name.append(pick(WORDS, random));
+                }
+        }
+        return name.append(pick(EXTENSIONS, random)).toString();
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String pad(int value, int width) {
+        StringBuilder padded = new StringBuilder(Integer.toString(value));
+        while (padded.length() < width)
+            padded.insert(0, '0');
+        return padded.toString();
+    }
+}
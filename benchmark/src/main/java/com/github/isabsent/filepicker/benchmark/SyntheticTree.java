@@ -0,0 +1,61 @@
+package com.github.isabsent.filepicker.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * A temporary folder with generated entries: one in ten is a subfolder holding a few files, the
+ * others are sparse files of random size and modification time
+ */
+public class SyntheticTree {
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private final File root;
+
+    public SyntheticTree(Names.Kind kind, int count, long seed) throws IOException {
+        root = File.createTempFile("filepicker-benchmark", "");
+        if (!root.delete() || !root.mkdir())
+            throw new IOException("Cannot create " + root);
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        String[] names = Names.generate(kind, count, seed);
+        for (int i = 0; i < names.length; i++) {
+            File file = new File(root, i + " " + names[i]);//Unique and still natural to sort
+            if (i % 10 == 0) {
+                if (!file.mkdir())
+                    throw new IOException("Cannot create " + file);
+                for (int j = 0; j < 3; j++)
+                    createFile(new File(file, j + ".txt"), random.nextInt(4096));
+            } else
+                createFile(file, random.nextInt(64 * 1024 * 1024));
+            file.setLastModified(now - random.nextInt(1000) * DAY_MS);
+        }
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public void delete() {
+        delete(root);
+    }
+
+    private static void createFile(File file, long length) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
@@ -3,35 +3,66 @@ package com.github.isabsent.filepicker;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.graphics.Bitmap;
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
-import android.support.v4.util.Pair;
 import android.support.v7.app.AlertDialog;
-import android.text.Spannable;
-import android.text.SpannableString;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.text.format.DateFormat;
+import android.text.format.Formatter;
+import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.Button;
-
-import com.github.isabsent.filepicker.comparator.FileNameComparator;
+import android.widget.EditText;
+import android.widget.Filter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.github.isabsent.filepicker.comparator.SortKey;
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.entity.IdIndex;
 import com.github.isabsent.filepicker.entity.Item;
 import com.github.isabsent.filepicker.entity.ItemViewHolder;
-import com.github.isabsent.filepicker.entity.SimpleFilePickerItem;
+import com.github.isabsent.filepicker.entity.ListingItem;
+import com.github.isabsent.filepicker.entity.ListingRows;
+import com.github.isabsent.filepicker.entity.Selection;
+import com.github.isabsent.filepicker.listing.DirectoryLoader;
+import com.github.isabsent.filepicker.listing.FilterIndex;
+import com.github.isabsent.filepicker.listing.FolderPrefetcher;
+import com.github.isabsent.filepicker.listing.FolderWatcher;
+import com.github.isabsent.filepicker.listing.ListingCache;
+import com.github.isabsent.filepicker.listing.ListingSorter;
+import com.github.isabsent.filepicker.listing.ListingStore;
+import com.github.isabsent.filepicker.listing.MetadataLoader;
+import com.github.isabsent.filepicker.listing.NavigationScheduler;
+import com.github.isabsent.filepicker.listing.SelectionSizeCalculator;
+import com.github.isabsent.filepicker.listing.SubtreeSearch;
+import com.github.isabsent.filepicker.metrics.FolderMetrics;
+import com.github.isabsent.filepicker.metrics.PickerMetrics;
+import com.github.isabsent.filepicker.result.ResultStore;
+import com.github.isabsent.filepicker.result.SelectionResult;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+import com.github.isabsent.filepicker.thumbnail.ThumbnailLoader;
 
 import org.apache.commons.io.FilenameUtils;
 
-import java.io.File;
-import java.io.FileFilter;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import eltos.simpledialogfragment.SimpleDialog;
-import eltos.simpledialogfragment.color.SimpleColorDialog;
 import eltos.simpledialogfragment.list.AdvancedAdapter;
 import eltos.simpledialogfragment.list.CustomListDialog;
 
@@ -47,19 +78,66 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
     private static final String
             TAG = "simpleListDialog",
             COMPOSITE_MODE = TAG + "compositeMode",
-            PATH_ARRAY = TAG + "pathArray",
+            LISTING_HANDLE = TAG + "listingHandle",
             FOLDER_PATH = TAG + "folderPath",
-            BUTTONS_ENABLED = TAG + "buttonsEnabled";
+            BUTTONS_ENABLED = TAG + "buttonsEnabled",
+            LOAD_IN_BACKGROUND = TAG + "loadInBackground",
+            NAVIGATE_IN_PLACE = TAG + "navigateInPlace",
+            PREFETCH_MODE = TAG + "prefetchMode",
+            PREFETCH_MAX_KILOBYTES = TAG + "prefetchMaxKilobytes",
+            WATCH_FOLDER = TAG + "watchFolder",
+            SEARCH_SUBTREE = TAG + "searchSubtree",
+            SEARCH_WORKER_COUNT = TAG + "searchWorkerCount",
+            SORT_KEY = TAG + "sortKey",
+            SORT_ASCENDING = TAG + "sortAscending",
+            SHOW_DETAILS = TAG + "showDetails",
+            SHOW_THUMBNAILS = TAG + "showThumbnails",
+            STORAGE = TAG + "storage",
+            METRICS = TAG + "metrics",
+            SHOW_SELECTION_SIZE = TAG + "showSelectionSize";
+
+    private static final long PREFETCH_DELAY_MS = 200;
+    private static final long FILTER_DELAY_MS = 150;
+    private static final long SEARCH_DELAY_MS = 300;
+    private static final int MAX_LISTED_SELECTION = 500;
+    private static final long MAX_PARCELED_SELECTION_BYTES = 64 * 1024;
 
+    /**
+     * @deprecated the listing is kept in {@link ListingStore} and no longer put to the arguments
+     */
+    @Deprecated
     protected final static String DATA_SET = TAG + "data_set";
 
     /**
      * Key for an <b>ArrayList&lt;String&gt;</b> returned by {@link SimpleFilePickerDialog#onResult}
+     * in multi choice mode, only for selections of up to 500 entries. Use {@link #getSelectedEntries}
+     * for selections of any size.
      */
     public static final String
             SELECTED_LABELS = TAG + "selectedLabels",
             SELECTED_PATHS = TAG + "selectedPaths";
 
+    /**
+     * Keys for the {@link SelectionResult} returned by {@link SimpleFilePickerDialog#onResult} in
+     * multi choice mode: the result itself if it is small, otherwise a <b>String</b> handle into
+     * the {@link ResultStore}. Read either with {@link #getSelectedEntries}.
+     */
+    public static final String
+            SELECTED_ENTRIES = TAG + "selectedEntries",
+            SELECTED_ENTRIES_HANDLE = TAG + "selectedEntriesHandle";
+
+    /**
+     * Keys for the <b>long</b> totals of the checked entries, folders counted recursively,
+     * returned by {@link SimpleFilePickerDialog#onResult} if {@link #showSelectionSize} is set.
+     * The <b>boolean</b> {@link #SELECTED_TOTALS_COMPLETE} is false if folders were still being
+     * walked.
+     */
+    public static final String
+            SELECTED_TOTAL_BYTES = TAG + "selectedTotalBytes",
+            SELECTED_TOTAL_FILES = TAG + "selectedTotalFiles",
+            SELECTED_TOTAL_FOLDERS = TAG + "selectedTotalFolders",
+            SELECTED_TOTALS_COMPLETE = TAG + "selectedTotalsComplete";
+
     /**
      * Key for a <b>String</b> returned by {@link SimpleFilePickerDialog#onResult} in single choice mode
      */
@@ -68,17 +146,60 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
             SELECTED_SINGLE_PATH = TAG + "selectedSinglePath",
             HIGHLIGHT = TAG + "highlight";
 
-    private ArrayList<SimpleFilePickerItem> mData;
+    private CompactListing mListing;
+    private String listingHandle;
     private Button openButton, upButton, selectButton;
     private CompositeMode mode;
     private int choiceMode;
     private String folderPath;
+    private StorageProvider mStorage;
     private InteractionListenerString mListenerString;
     private InteractionListenerInt mListenerInt;
+    private SimpleFilePickerAdapter mAdapter;
+    private DirectoryLoader mLoader;
+    private final NavigationScheduler mNavigation = new NavigationScheduler(new NavigationScheduler.Callback() {
+        @Override
+        public void onNavigationDue(String path) {
+            if (mAdapter == null || !path.equals(folderPath))
+                return;
+            loadListing(null, true);//Cancellable, the user may still be moving on
+            if (!isSearching())
+                mAdapter.setListing(mListing);
+        }
+    });
+    private Future<?> mSorting;
+    private final Map<String, int[]> scrollPositions = new HashMap<>();
+    private FolderPrefetcher mPrefetcher;
+    private FolderPrefetcher.Mode prefetchMode = FolderPrefetcher.Mode.OFF;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private FolderWatcher mWatcher;
+    private EditText mFilterInput;
+    private SearchListener mSearchListener;
+    private PickerMetrics.Listener mMetricsListener;
+    private PickerMetrics.Listener mDialogMetricsListener;//Registered under the name of the arguments
+    private FolderMetrics mFolderMetrics;//Of the folder shown, null if nothing is measured
+    private SubtreeSearch mSearch;
+    private SelectionSizeCalculator mSizeCalculator;
+    private CharSequence mSelectLabel;
+    private CompactListing mSearchResults;
+    private String searchQuery = "";
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startSearch(searchQuery);
+        }
+    };
+    private final Runnable prefetchVisibleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            prefetchVisibleFolders();
+        }
+    };
 
+    /**
+     * @param folderPath folder to show, null for the root of the storage
+     */
     public static SimpleFilePickerDialog build(String folderPath, CompositeMode mode){
-        if (folderPath == null)
-            folderPath = Environment.getExternalStorageDirectory().getAbsolutePath();
         if (mode == null)
             mode = FILE_OR_FOLDER_DIRECT_CHOICE_SELECTION;
 
@@ -102,16 +223,259 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         return super.filterable(enabled);
     }
 
+    /**
+     * If set to true, the dialog is shown immediately and the folder is enumerated
+     * on a background thread. Entries appear in batches while they are read and
+     * are sorted once the enumeration is complete. Folders opened in place are always listed
+     * in background, see {@link #navigateInPlace}.
+     *
+     * @param enabled weather to list the folder in background or not
+     */
+    public SimpleFilePickerDialog loadInBackground(boolean enabled) {
+        setArg(LOAD_IN_BACKGROUND, enabled);
+        return this;
+    }
+
+    /**
+     * If set to true, Up and Open show the target folder in this dialog, reusing its list and
+     * adapter, instead of asking the {@link InteractionListenerString} or {@link InteractionListenerInt}
+     * to show a new dialog. Target folders are listed in background, and the scroll position of every
+     * visited folder is restored when going back to it.
+     *
+     * @param enabled weather to navigate in place or not
+     */
+    public SimpleFilePickerDialog navigateInPlace(boolean enabled) {
+        setArg(NAVIGATE_IN_PLACE, enabled);
+        return this;
+    }
+
+    /**
+     * Lists subfolders in background while the user looks at a folder, so that opening one
+     * of them is instant
+     *
+     * @param mode which subfolders to list ahead of time
+     * @param maxKilobytes limit for the estimated memory taken by listings prefetched for one folder
+     */
+    public SimpleFilePickerDialog prefetch(FolderPrefetcher.Mode mode, int maxKilobytes) {
+        setArg(PREFETCH_MODE, mode.ordinal());
+        setArg(PREFETCH_MAX_KILOBYTES, maxKilobytes);
+        return this;
+    }
+
+    /**
+     * If set to true (default), the shown folder is watched and entries created, deleted or
+     * moved while the dialog is open are added to or removed from the list
+     *
+     * @param enabled weather to watch the folder or not
+     */
+    public SimpleFilePickerDialog watchFolder(boolean enabled) {
+        setArg(WATCH_FOLDER, enabled);
+        return this;
+    }
+
+    /**
+     * If set to true, the text typed into the filter input (see {@link #filterable(boolean, boolean)})
+     * searches the whole subtree under the shown folder instead of filtering it. Matches are added to
+     * the list while the subfolders are walked. Files and folders are matched according to the
+     * {@link CompositeMode}. A host implementing {@link SearchListener} is told the walk figures.
+     *
+     * @param enabled weather to search subfolders or not
+     * @param workerCount number of threads walking the subtree, 0 for {@link SubtreeSearch#DEFAULT_WORKER_COUNT}
+     */
+    public SimpleFilePickerDialog searchSubtree(boolean enabled, int workerCount) {
+        setArg(SEARCH_SUBTREE, enabled);
+        setArg(SEARCH_WORKER_COUNT, workerCount);
+        return this;
+    }
+
+    /**
+     * Sets the order of the list. Folders are always listed before files.
+     *
+     * @param key what to sort by, {@link SortKey#NAME} by default
+     * @param ascending weather to sort in ascending order (default) or not
+     */
+    public SimpleFilePickerDialog sortBy(SortKey key, boolean ascending) {
+        setArg(SORT_KEY, key.ordinal());
+        setArg(SORT_ASCENDING, ascending);
+        return this;
+    }
+
+    /**
+     * If set to true, every row shows the size and modification date of its entry below the name.
+     * Values not read while listing the folder are read in background for the rows on screen only.
+     *
+     * @param enabled weather to show sizes and dates or not
+     */
+    public SimpleFilePickerDialog showDetails(boolean enabled) {
+        setArg(SHOW_DETAILS, enabled);
+        return this;
+    }
+
+    /**
+     * If set to true, image and video files show a thumbnail instead of the file icon. Thumbnails
+     * are decoded in background and cached in memory and on disk, see {@link ThumbnailLoader}.
+     *
+     * @param enabled weather to show thumbnails or not
+     */
+    public SimpleFilePickerDialog showThumbnails(boolean enabled) {
+        setArg(SHOW_THUMBNAILS, enabled);
+        return this;
+    }
+
+    /**
+     * If set to true in folder and mixed modes, the Select button shows the size of the checked
+     * entries, with folders walked recursively in background, and the totals are returned by
+     * {@link #onResult}, see {@link #SELECTED_TOTAL_BYTES}.
+     *
+     * @param enabled weather to add up the size of the selection or not
+     */
+    public SimpleFilePickerDialog showSelectionSize(boolean enabled) {
+        setArg(SHOW_SELECTION_SIZE, enabled);
+        return this;
+    }
+
+    /**
+     * Browses the folders of a provider registered with {@link StorageProvider#register} instead
+     * of external storage. Folders are not watched and thumbnails are not shown for providers that
+     * are not {@link StorageProvider#isLocal() local}.
+     *
+     * @param name name the provider is registered under, {@link StorageProvider#FILE} by default
+     */
+    public SimpleFilePickerDialog storage(String name) {
+        setArg(STORAGE, name);
+        return this;
+    }
+
+    /**
+     * Reports the figures of this dialog to a listener registered with {@link PickerMetrics#register},
+     * in addition to the host and the global listener, so dialogs of one activity can be measured apart.
+     *
+     * @param name name the listener is registered under
+     */
+    public SimpleFilePickerDialog metrics(String name) {
+        setArg(METRICS, name);
+        return this;
+    }
+
+    /**
+     * Changes the order of the shown list. The rows already listed are sorted again in background,
+     * without reading the folder again; subtree search results keep their order.
+     */
+    public void setSortOrder(SortKey key, boolean ascending) {
+        sortBy(key, ascending);
+        if (mAdapter != null && !isLoading())
+            sortListing();
+    }
+
+    private SortKey getSortKey() {
+        return SortKey.values()[getArguments() == null ? 0 : getArguments().getInt(SORT_KEY)];
+    }
+
+    private boolean isSortAscending() {
+        return getArguments() == null || getArguments().getBoolean(SORT_ASCENDING, true);
+    }
+
+    /**
+     * Sorts the shown listing again if it is not in the requested order, retrying if it changes meanwhile
+     */
+    private void sortListing() {
+        cancelSorting();
+        final DirectoryLoader.Result current = ListingStore.get(listingHandle);
+        final SortKey key = getSortKey();
+        final boolean ascending = isSortAscending();
+        if (current == null || current.listing != mListing || current.sortKey == key && current.ascending == ascending)
+            return;
+        final int modCount = current.listing.getModCount();
+        mSorting = ListingSorter.sortInBackground(mStorage, current.listing, key, ascending, new ListingSorter.Callback() {
+            @Override
+            public void onSorted(CompactListing sorted) {
+                mSorting = null;
+                if (mListing != current.listing || mAdapter == null)
+                    return;
+                if (current.listing.getModCount() != modCount) {
+                    sortListing();
+                    return;
+                }
+                ListingStore.put(listingHandle, new DirectoryLoader.Result(sorted, key, ascending));
+                mListing = sorted;
+                if (!isSearching()) {
+                    mAdapter.updateListing(mListing);
+                    AbsListView listView = getListView();
+                    if (listView != null)
+                        listView.setSelection(0);
+                }
+            }
+        });
+    }
+
+    private void cancelSorting() {
+        if (mSorting != null) {
+            mSorting.cancel(true);
+            mSorting = null;
+        }
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         if (getArguments() != null) {
+            String storage = getArguments().getString(STORAGE);
+            mStorage = StorageProvider.get(storage != null ? storage : StorageProvider.FILE);
+            String metrics = getArguments().getString(METRICS);
+            if (metrics != null)
+                mDialogMetricsListener = PickerMetrics.get(metrics);
             folderPath = getArguments().getString(FOLDER_PATH);
+            if (folderPath == null) {
+                folderPath = mStorage.getRoot();
+                getArguments().putString(FOLDER_PATH, folderPath);
+            }
             mode = CompositeMode.values()[getArguments().getInt(COMPOSITE_MODE)];
             choiceMode = getArguments().getInt(CHOICE_MODE);
+            listingHandle = getArguments().getString(LISTING_HANDLE);
+            if (listingHandle == null) {
+                listingHandle = ListingStore.newHandle();
+                getArguments().putString(LISTING_HANDLE, listingHandle);
+            }
+            prefetchMode = FolderPrefetcher.Mode.values()[getArguments().getInt(PREFETCH_MODE)];
+            if (prefetchMode != FolderPrefetcher.Mode.OFF)
+                mPrefetcher = new FolderPrefetcher(mStorage, 1024L * getArguments().getInt(PREFETCH_MAX_KILOBYTES));
+            if (getArguments().getBoolean(SHOW_SELECTION_SIZE) && !ITEM_FILE_ONLY.equals(mode.getItemMode()))
+                mSizeCalculator = new SelectionSizeCalculator(mStorage, new SelectionSizeCalculator.Callback() {
+                    @Override
+                    public void onTotalsUpdated(SelectionSizeCalculator.Totals totals) {
+                        showSelectionSize(totals);
+                    }
+                });
+            if (getArguments().getBoolean(WATCH_FOLDER, true) && mStorage.isLocal())
+                mWatcher = new FolderWatcher(mStorage, new FolderWatcher.Callback() {
+                    @Override
+                    public void onFolderChanged(List<FileEntry> added, List<String> removed) {
+                        applyFolderChanges(added, removed);
+                    }
+
+                    @Override
+                    public void onFolderGone() {
+                        ListingCache.getInstance().invalidate(folderPath);
+                        if (!isLoading() && mAdapter != null) {
+                            loadListing(null);
+                            if (!isSearching())
+                                mAdapter.updateListing(mListing);
+                        }
+                    }
+                });
         }
     }
 
+    private void applyFolderChanges(List<FileEntry> added, List<String> removed) {
+        ListingCache.getInstance().invalidate(folderPath);
+        DirectoryLoader.Result listing = ListingStore.get(listingHandle);
+        if (isLoading() || listing == null || mAdapter == null)
+            return;//A running enumeration sees the changes itself
+        if (listing.applyChanges(mStorage, added, removed, isFoldersOnly()) && !isSearching()
+                && !mAdapter.updateListing(mListing) && !added.isEmpty())
+            mAdapter.notifyDataSetChanged();//Rows of written files keep position and id, but show a new size
+    }
+
     @Override
     protected SimpleFilePickerAdapter onCreateAdapter() {
         int layout;
@@ -130,12 +494,352 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
                 break;
         }
 
-        if (getArguments() != null) {
-            mData = getArguments().getParcelableArrayList(DATA_SET);
-            if (mData == null)
-                mData = new ArrayList<>(0);
+        loadListing(ListingStore.get(listingHandle));//Lost after process death
+        mAdapter = new SimpleFilePickerAdapter(layout, mListing, this);
+        if (!isLoading())
+            reportFolderShown();
+        return mAdapter;
+    }
+
+    private void loadListing(DirectoryLoader.Result listing) {
+        loadListing(listing, getArguments() != null && getArguments().getBoolean(LOAD_IN_BACKGROUND));
+    }
+
+    /**
+     * @param inBackground true to list the folder on a background thread if the listing is not given
+     */
+    private void loadListing(DirectoryLoader.Result listing, boolean inBackground) {
+        mListing = null;
+        mFolderMetrics = PickerMetrics.isEnabled(mMetricsListener, mDialogMetricsListener) ? new FolderMetrics(folderPath) : null;
+        if (listing == null && getArguments() != null && !inBackground)
+            listing = DirectoryLoader.load(mStorage, folderPath, isFoldersOnly(), getSortKey(), isSortAscending(), mFolderMetrics);
+        if (listing != null)
+            putListing(listing);
+        else {
+            mListing = new CompactListing(folderPath, 0);
+            startLoading();
+        }
+    }
+
+    private void startLoading() {
+        cancelLoading();
+        mLoader = new DirectoryLoader(mStorage, folderPath, isFoldersOnly(), getSortKey(), isSortAscending(), mFolderMetrics, new DirectoryLoader.Callback() {
+            @Override
+            public void onBatchLoaded(CompactListing batch) {
+                mListing.addAll(batch);
+                if (!isSearching())
+                    mAdapter.appendRows();
+            }
+
+            @Override
+            public void onLoadFinished(DirectoryLoader.Result result) {
+                mLoader = null;
+                mNavigation.onListingFinished();
+                putListing(result);
+                if (!isSearching()) {
+                    mAdapter.setListing(mListing);
+                    restoreScrollPosition();
+                    setEmptyText(getString(R.string.list_empty));
+                }
+                reportFolderShown();
+                if (selectButton != null && !ITEM_FILE_ONLY.equals(mode.getItemMode()))
+                    selectButton.setEnabled(true);
+                sortListing();//The order may have changed while loading
+            }
+        });
+        mLoader.start();
+    }
+
+    private void cancelLoading() {
+        if (mLoader != null) {
+            mLoader.cancel();
+            mLoader = null;
         }
-        return new SimpleFilePickerAdapter(layout, mData, this);
+    }
+
+    /**
+     * @return true while the folder is listed or its listing waits for navigation to settle
+     */
+    private boolean isLoading() {
+        return mLoader != null || mNavigation.isPending();
+    }
+
+    /**
+     * Hands the timings of the folder to the metrics listeners once its list is drawn
+     */
+    private void reportFolderShown() {
+        final FolderMetrics metrics = mFolderMetrics;
+        if (metrics == null)
+            return;
+        if (getListView() != null)
+            PickerMetrics.reportOnFirstFrame(mMetricsListener, mDialogMetricsListener, getTag(), metrics, getListView());
+        else
+            mainHandler.post(new Runnable() {//The list view is created after the adapter
+                @Override
+                public void run() {
+                    if (metrics == mFolderMetrics)
+                        PickerMetrics.reportOnFirstFrame(mMetricsListener, mDialogMetricsListener, getTag(), metrics, getListView());
+                }
+            });
+    }
+
+    private void reportFolderLeft() {
+        if (mFolderMetrics != null && mAdapter != null)
+            PickerMetrics.folderLeft(mMetricsListener, mDialogMetricsListener, getTag(), folderPath, mAdapter.takeBindCount());
+        mFolderMetrics = null;
+    }
+
+    private boolean isFoldersOnly() {
+        return ItemMode.ITEM_FOLDER_ONLY.equals(mode.getItemMode());
+    }
+
+    private void putListing(DirectoryLoader.Result result) {
+        ListingStore.put(listingHandle, result);
+        mListing = result.listing;
+
+        if (prefetchMode == FolderPrefetcher.Mode.ALL) {
+            List<String> folders = new ArrayList<>();
+            for (int i = 0; i < mListing.size(); i++)
+                if (!mListing.isFile(i))
+                    folders.add(mStorage.getPath(mListing, i));
+            mPrefetcher.prefetch(folders);
+        }
+    }
+
+    /**
+     * Called when a folder row is bound, prefetches the visible subfolders once scrolling settles
+     */
+    private void onFolderRowBound() {
+        if (prefetchMode == FolderPrefetcher.Mode.VISIBLE && !isLoading()) {
+            mainHandler.removeCallbacks(prefetchVisibleRunnable);
+            mainHandler.postDelayed(prefetchVisibleRunnable, PREFETCH_DELAY_MS);
+        }
+    }
+
+    private void prefetchVisibleFolders() {
+        AbsListView listView = getListView();
+        if (listView == null || mAdapter == null)
+            return;
+        List<String> folders = new ArrayList<>();
+        int last = Math.min(listView.getLastVisiblePosition(), mAdapter.getCount() - 1);
+        for (int position = Math.max(listView.getFirstVisiblePosition(), 0); position <= last; position++) {
+            Item item = mAdapter.getItem(position);
+            if (!item.isFile())
+                folders.add(mStorage.getChild(folderPath, item.getLabel()));
+        }
+        mPrefetcher.prefetch(folders);
+    }
+
+    private void cancelPrefetch() {
+        mainHandler.removeCallbacks(prefetchVisibleRunnable);
+        if (mPrefetcher != null)
+            mPrefetcher.cancel();
+    }
+
+    private boolean isNavigatingInPlace() {
+        return getArguments() != null && getArguments().getBoolean(NAVIGATE_IN_PLACE);
+    }
+
+    /**
+     * Shows another folder in this dialog, keeping the list view and adapter. The listing of the
+     * folder shown before is cancelled, and the new folder is listed in background, possibly only
+     * once navigation settles, see {@link NavigationScheduler}. A slow folder thus never blocks the
+     * next tap and is cancelled by it.
+     */
+    private void navigateTo(String path) {
+        if (path == null || !isPathAcceptable(path) || mAdapter == null)
+            return;
+
+        boolean busy = isLoading();
+        boolean wasSearching = isSearching();
+        stopSearch();
+        AbsListView listView = getListView();
+        if (listView != null && listView.getChildCount() > 0 && !wasSearching)
+            scrollPositions.put(folderPath, new int[]{listView.getFirstVisiblePosition(), listView.getChildAt(0).getTop()});
+
+        cancelLoading();
+        cancelSorting();
+        cancelPrefetch();
+        if (mPrefetcher != null)
+            mPrefetcher.reset();
+        mAdapter.clearChecked();
+        reportFolderLeft();
+
+        folderPath = path;
+        getArguments().putString(FOLDER_PATH, folderPath);
+        if (mWatcher != null)
+            mWatcher.startWatching(folderPath);
+        ListingStore.release(listingHandle);
+        if (mNavigation.request(folderPath, busy))
+            loadListing(null, true);
+        else
+            mListing = new CompactListing(folderPath, 0);
+        mAdapter.setListing(mListing);
+        if (wasSearching && mFilterInput != null)
+            mFilterInput.setText("");
+
+        setEmptyText(getString(R.string.list_loading));//Scroll position and metrics follow with the listing
+        if (upButton != null)
+            upButton.setEnabled(!isStorageRoot(folderPath));
+        resetButtons();
+    }
+
+    /**
+     * Sets Open and Select the way they are with no row checked
+     */
+    private void resetButtons() {
+        if (openButton != null)
+            setButtons(false, !ITEM_FILE_ONLY.equals(mode.getItemMode()) && !isLoading());
+    }
+
+    private boolean isSearching() {
+        return mSearchResults != null;
+    }
+
+    /**
+     * Called on every change of the filter input, restarts the subtree search once typing pauses
+     */
+    private void onFilterTextChanged(CharSequence text) {
+        if (getArguments() == null || !getArguments().getBoolean(SEARCH_SUBTREE))
+            return;
+        cancelSearch();
+        searchQuery = text.toString();
+        mainHandler.removeCallbacks(searchRunnable);
+        mainHandler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+    }
+
+    private void startSearch(String query) {
+        if (mAdapter == null)
+            return;
+        cancelSearch();
+        if (query.length() == 0) {
+            if (isSearching()) {
+                mSearchResults = null;
+                mAdapter.clearChecked();
+                mAdapter.setListing(mListing);
+                resetButtons();
+                restoreScrollPosition();
+                setEmptyText(getString(isLoading() ? R.string.list_loading : R.string.list_empty));
+            }
+            return;
+        }
+
+        mSearchResults = new CompactListing(folderPath, 0);
+        mAdapter.clearChecked();
+        mAdapter.setListing(mSearchResults);
+        resetButtons();
+        setEmptyText(getString(R.string.list_searching));
+        int workerCount = getArguments().getInt(SEARCH_WORKER_COUNT);
+        ItemMode itemMode = mode.getItemMode();
+        mSearch = new SubtreeSearch(mStorage, folderPath, FilterIndex.normalize(query), !ITEM_FOLDER_ONLY.equals(itemMode),
+                !ITEM_FILE_ONLY.equals(itemMode), workerCount > 0 ? workerCount : SubtreeSearch.DEFAULT_WORKER_COUNT,
+                new SubtreeSearch.Callback() {
+                    @Override
+                    public void onMatchesFound(CompactListing batch) {
+                        mSearchResults.addAll(batch);
+                        mAdapter.appendRows();
+                    }
+
+                    @Override
+                    public void onSearchFinished(SubtreeSearch.Stats stats) {
+                        mSearch = null;
+                        setEmptyText(getString(R.string.list_empty));
+                        if (mSearchListener != null)
+                            mSearchListener.onSubtreeSearchFinished(getTag(), stats);
+                    }
+                });
+        mSearch.start();
+    }
+
+    private void cancelSearch() {
+        if (mSearch != null) {
+            mSearch.cancel();
+            mSearch = null;
+        }
+    }
+
+    /**
+     * Cancels the subtree search and forgets its results, the caller shows the folder listing again
+     */
+    private void stopSearch() {
+        mainHandler.removeCallbacks(searchRunnable);
+        cancelSearch();
+        mSearchResults = null;
+    }
+
+    /**
+     * @return the search results while searching the subtree, otherwise the listing of the folder
+     */
+    private CompactListing getShownListing() {
+        return isSearching() ? mSearchResults : mListing;
+    }
+
+    private void openCheckedFolder() {
+        navigateTo(getPathToOpen());
+    }
+
+    private void restoreScrollPosition() {
+        AbsListView listView = getListView();
+        if (listView != null) {
+            int[] position = scrollPositions.get(folderPath);
+            if (position != null)
+                listView.setSelectionFromTop(position[0], position[1]);
+            else
+                listView.setSelectionFromTop(0, 0);
+        }
+    }
+
+    private AbsListView getListView() {
+        return getDialog() != null ? findView(getDialog().getWindow().getDecorView(), AbsListView.class) : null;
+    }
+
+    private void setEmptyText(String text) {
+        AbsListView listView = getListView();
+        if (listView != null && listView.getEmptyView() instanceof TextView)
+            ((TextView) listView.getEmptyView()).setText(text);
+    }
+
+    private static <T extends View> T findView(View view, Class<T> type) {
+        if (type.isInstance(view))
+            return type.cast(view);
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                T child = findView(group.getChildAt(i), type);
+                if (child != null)
+                    return child;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onDismiss(DialogInterface dialog) {
+        mNavigation.cancel();
+        cancelLoading();
+        cancelSorting();
+        cancelPrefetch();
+        stopSearch();
+        if (mAdapter != null)
+            mAdapter.cancelDetails();
+        cancelSelectionSize();
+        reportFolderLeft();
+        super.onDismiss(dialog);
+    }
+
+    @Override
+    public void onDestroy() {
+        mNavigation.cancel();
+        cancelLoading();
+        cancelSorting();
+        cancelPrefetch();
+        stopSearch();
+        if (mAdapter != null)
+            mAdapter.cancelDetails();
+        cancelSelectionSize();
+        if (getActivity() == null || !getActivity().isChangingConfigurations())
+            ListingStore.release(listingHandle);
+        super.onDestroy();
     }
 
     public void onActivityCreated(Bundle savedInstanceState) { //Restore the fragment's state here
@@ -161,21 +865,71 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
     @Override
     public void onStart() {
         super.onStart();
+        if (mWatcher != null)
+            mWatcher.startWatching(folderPath);
         AlertDialog alertDialog = (AlertDialog) getDialog();
         if (alertDialog != null) {
             upButton = alertDialog.getButton(Dialog.BUTTON_NEUTRAL);//Up
-            if (isExternalStorageRoot(folderPath))
+            if (isStorageRoot(folderPath))
                 upButton.setEnabled(false);
 
             openButton = alertDialog.getButton(Dialog.BUTTON_NEGATIVE);//Open
             openButton.setEnabled(false);
 
             selectButton = alertDialog.getButton(Dialog.BUTTON_POSITIVE);//Select
-            if (ITEM_FILE_ONLY.equals(mode.getItemMode()))
+            if (ITEM_FILE_ONLY.equals(mode.getItemMode()) || isLoading())
                 selectButton.setEnabled(false);
+            mSelectLabel = selectButton.getText();
+            if (mSizeCalculator != null && mAdapter != null)
+                mAdapter.onSelectionChanged();//Checked rows may have been restored
+
+            if (isLoading())
+                setEmptyText(getString(R.string.list_loading));
+
+            EditText filterInput = findView(alertDialog.getWindow().getDecorView(), EditText.class);
+            if (filterInput != null && filterInput != mFilterInput && mAdapter != null) {
+                mFilterInput = filterInput;
+                filterInput.addTextChangedListener(new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                    }
+
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {
+                        mAdapter.onFilterTextChanged(s);
+                        onFilterTextChanged(s);
+                    }
+
+                    @Override
+                    public void afterTextChanged(Editable s) {
+                    }
+                });
+            }
+
+            if (isNavigatingInPlace()) {//Replacing the listeners keeps the dialog from being dismissed
+                upButton.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        navigateTo(mStorage.getParent(folderPath));
+                    }
+                });
+                openButton.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        openCheckedFolder();
+                    }
+                });
+            }
         }
     }
 
+    @Override
+    public void onStop() {
+        if (mWatcher != null)
+            mWatcher.stopWatching();
+        super.onStop();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -192,10 +946,10 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         if (result != null) {
             switch (which) {
                 case BUTTON_NEUTRAL://Up
-                    showListItemDialog(new File(folderPath).getParent());
+                    showListItemDialog(mStorage.getParent(folderPath));
                     return result;
                 case BUTTON_NEGATIVE://Open
-                    String selectedPath = getPathToOpen(result);
+                    String selectedPath = getPathToOpen();
                     if (selectedPath != null) {
                         showListItemDialog(selectedPath);
                         return result;
@@ -203,8 +957,7 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
                     break;
                 case BUTTON_POSITIVE: //Select
                     if (isSelectionEmpty(result)) {//Choosing a parent folder
-                        String[] paths = getArguments().getStringArray(PATH_ARRAY);
-                        if (paths != null) {
+                        if (mListing != null) {
                             result.putString(SELECTED_SINGLE_LABEL, FilenameUtils.getName(folderPath));
                             result.putString(SELECTED_SINGLE_PATH, folderPath);
                         }
@@ -213,6 +966,14 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
                     break;
             }
 
+            if (which == BUTTON_POSITIVE && mSizeCalculator != null) {
+                SelectionSizeCalculator.Totals totals = mSizeCalculator.getTotals();
+                result.putLong(SELECTED_TOTAL_BYTES, totals.bytes);
+                result.putLong(SELECTED_TOTAL_FILES, totals.fileCount);
+                result.putLong(SELECTED_TOTAL_FOLDERS, totals.folderCount);
+                result.putBoolean(SELECTED_TOTALS_COMPLETE, totals.complete);
+            }
+
             ArrayList<Integer> positions = result.getIntegerArrayList(SELECTED_POSITIONS);
 
             if (positions != null && positions.isEmpty() && !result.containsKey(SELECTED_SINGLE_POSITION) && which == BUTTON_NEGATIVE) {//Select
@@ -220,63 +981,82 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
                 return result;
             }
 
-            if (positions != null && !positions.isEmpty() && getArguments() != null) {
-                String[] paths = getArguments().getStringArray(PATH_ARRAY);
-                if (paths != null) {
-                    ArrayList<String> labels = new ArrayList<>(positions.size());
-                    ArrayList<String> selectedPaths = new ArrayList<>(positions.size());
-                    for (Integer pos : positions) {
-                        labels.add(mData.get(pos).toString());
-                        selectedPaths.add(paths[pos]);
+            if (positions != null && !positions.isEmpty()) {
+                CompactListing listing = getShownListing();
+                if (listing != null) {
+                    SelectionResult selected = SelectionResult.of(listing, positions);
+                    if (selected.estimateParcelSize() <= MAX_PARCELED_SELECTION_BYTES)
+                        result.putParcelable(SELECTED_ENTRIES, selected);
+                    else
+                        result.putString(SELECTED_ENTRIES_HANDLE, ResultStore.put(selected));
+
+                    if (positions.size() <= MAX_LISTED_SELECTION) {
+                        ArrayList<String> labels = new ArrayList<>(positions.size());
+                        ArrayList<String> selectedPaths = new ArrayList<>(positions.size());
+                        for (Integer pos : positions) {
+                            labels.add(FilenameUtils.getName(listing.getName(pos)));
+                            selectedPaths.add(mStorage.getPath(listing, pos));
+                        }
+                        result.putStringArrayList(SELECTED_LABELS, labels);
+                        result.putStringArrayList(SELECTED_PATHS, selectedPaths);
                     }
-                    result.putStringArrayList(SELECTED_LABELS, labels);
-                    result.putStringArrayList(SELECTED_PATHS, selectedPaths);
                 }
             }
 
-            if (result.containsKey(SELECTED_SINGLE_POSITION) && getArguments() != null) {
-                String[] paths = getArguments().getStringArray(PATH_ARRAY);
-                if (paths != null) {
+            if (result.containsKey(SELECTED_SINGLE_POSITION)) {
+                CompactListing listing = getShownListing();
+                if (listing != null) {
                     int selectedPosition = result.getInt(SELECTED_SINGLE_POSITION);
-                    SimpleFilePickerItem simpleFilePickerItem = mData.get(selectedPosition);
-                    String selectedLabel = simpleFilePickerItem.toString();
-                    result.putString(SELECTED_SINGLE_LABEL, selectedLabel);
-                    result.putString(SELECTED_SINGLE_PATH, paths[selectedPosition]);
+                    result.putString(SELECTED_SINGLE_LABEL, FilenameUtils.getName(listing.getName(selectedPosition)));
+                    result.putString(SELECTED_SINGLE_PATH, mStorage.getPath(listing, selectedPosition));
                 }
             }
         }
         return result;
     }
 
+    /**
+     * @param result the bundle passed to the result listener
+     * @return the entries checked in multi choice mode, or null if there are none or the result
+     * is no longer kept in the {@link ResultStore}
+     */
+    public static SelectionResult getSelectedEntries(Bundle result) {
+        SelectionResult selected = result.getParcelable(SELECTED_ENTRIES);
+        return selected != null ? selected : ResultStore.get(result.getString(SELECTED_ENTRIES_HANDLE));
+    }
+
+    /**
+     * Shows the size of the checked entries on the Select button, marked as partial while
+     * folders are being walked
+     */
+    private void showSelectionSize(SelectionSizeCalculator.Totals totals) {
+        if (selectButton == null || mSelectLabel == null)
+            return;
+        if (totals.complete && totals.fileCount == 0 && totals.folderCount == 0)
+            selectButton.setText(mSelectLabel);
+        else
+            selectButton.setText(getString(totals.complete ? R.string.button_select_size : R.string.button_select_size_partial,
+                    mSelectLabel, Formatter.formatShortFileSize(getContext(), totals.bytes)));
+    }
+
+    private void cancelSelectionSize() {
+        if (mSizeCalculator != null)
+            mSizeCalculator.cancel();
+    }
+
     private boolean isSelectionEmpty(Bundle result) {
         return !result.containsKey(SELECTED_SINGLE_POSITION) && (!result.containsKey(SELECTED_POSITIONS) || result.getIntegerArrayList(SELECTED_POSITIONS).isEmpty());
     }
 
-    private String getPathToOpen(Bundle extras){
-        if (getArguments() != null) {
-            String[] paths = getArguments().getStringArray(PATH_ARRAY);
-            if (paths != null) {
-                int selectedPathPosition = extras.getInt(SimpleColorDialog.SELECTED_SINGLE_POSITION, -1);
-                if (selectedPathPosition < 0) {
-                    List<Integer> selectedPathPositions = extras.getIntegerArrayList(SimpleColorDialog.SELECTED_POSITIONS);
-                    if (selectedPathPositions != null && !selectedPathPositions.isEmpty()) {
-                        if (selectedPathPositions.size() == 1)
-                            selectedPathPosition = selectedPathPositions.iterator().next();
-                        else {
-                            for (Integer position : selectedPathPositions)
-                                if (!new File(paths[position]).isFile()) {
-                                    if (selectedPathPosition >= 0) {
-                                        selectedPathPosition = -1;
-                                        break;
-                                    } else
-                                        selectedPathPosition = position;
-                                }
-                        }
-                    }
-                }
-                if (selectedPathPosition >= 0 && !new File(paths[selectedPathPosition]).isFile())
-                    return paths[selectedPathPosition];
-            }
+    /**
+     * @return path of the checked folder if exactly one folder is checked, otherwise null
+     */
+    private String getPathToOpen(){
+        CompactListing listing = getShownListing();
+        if (listing != null && mAdapter != null && mAdapter.getSelection().getFolderCount() == 1) {
+            int index = listing.indexOfId(mAdapter.getSelection().getSingleFolderId());
+            if (index >= 0)
+                return mStorage.getPath(listing, index);
         }
         return null;
     }
@@ -302,46 +1082,15 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         }
     }
 
-    private static boolean isPathAcceptable(String path){
-        String rootExternalStoragePath = Environment.getExternalStorageDirectory().getAbsolutePath();
-        return path.startsWith(rootExternalStoragePath);
+    private boolean isPathAcceptable(String path){
+        return mStorage.contains(path);
     }
 
     public SimpleFilePickerDialog path(String folderPath, final CompositeMode mode) {
         choiceMode(mode.getChoiceMode());
         setArg(COMPOSITE_MODE, mode.ordinal());
         setArg(FOLDER_PATH, folderPath);
-        if (getArguments() != null) {
-            final ItemMode itemMode = mode.getItemMode();
-            File[] items = new File(folderPath).listFiles(new FileFilter() {
-
-                @Override
-                public boolean accept(File file) {
-                    return ITEM_FILE_FOLDER.equals(itemMode) || ITEM_FILE_ONLY.equals(itemMode) || file.isDirectory();
-                }
-            });
-//            if (items.length == 0)
-                 emptyText("List is empty!");
-//            else {
-                List<File> itemsList = Arrays.asList(items);
-                Collections.sort(itemsList, new FileNameComparator(true));
-
-                ArrayList<SimpleFilePickerItem> list = new ArrayList<>(items.length);
-                int i = 0;
-                String[] itemPaths = new String[items.length];
-                String[] itemNames = new String[items.length];
-                boolean[] isFiles = new boolean[items.length];
-                for (File file : itemsList) {
-                    itemPaths[i] = file.getAbsolutePath();
-                    itemNames[i] = file.getName();
-                    isFiles[i] = file.isFile();
-                    list.add(new SimpleFilePickerItem(new Item(itemNames[i], isFiles[i]), itemNames[i].hashCode()));
-                    i++;
-                }
-                getArguments().putParcelableArrayList(DATA_SET, list);
-                getArguments().putStringArray(PATH_ARRAY, itemPaths);
-//            }
-        }
+        emptyText(R.string.list_empty);
         return this;
     }
 
@@ -351,110 +1100,459 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         private int choiceMode;
         private ItemMode itemMode;
         private CompositeMode mode;
-
-        public SimpleFilePickerAdapter(@LayoutRes int layout, ArrayList<SimpleFilePickerItem> data, SimpleFilePickerDialog dialog){
+        private volatile CompactListing mListing;
+        private volatile ListingRows dataAndIds;
+        private volatile String mTypedFilter;
+        private volatile FilterIndex.Match mShownMatch;
+        private final Selection mSelection = new Selection();
+        private boolean mHighlight;
+        private int mHighlightColor;
+        private MetadataLoader mDetailsLoader;
+        private java.text.DateFormat mDateFormat, mTimeFormat;
+        private final Date mDate = new Date();
+        private final StringBuilder mDetails = new StringBuilder();
+        private ThumbnailLoader mThumbnails;
+        private int mThumbnailSize;
+        private int mBindCount;
+        private long mTypedAt;
+
+        public SimpleFilePickerAdapter(@LayoutRes int layout, CompactListing listing, SimpleFilePickerDialog dialog){
             mLayout = layout;
             mDialog = dialog;
             choiceMode = mDialog.getArguments().getInt(CHOICE_MODE);
             mode = CompositeMode.values()[mDialog.getArguments().getInt(COMPOSITE_MODE)];
             itemMode = mode.getItemMode();
+            mHighlight = mDialog.getArguments().getBoolean(HIGHLIGHT);
+            if (mHighlight)
+                mHighlightColor = resolveHighlightColor();
+            if (mDialog.getArguments().getBoolean(SHOW_DETAILS)) {
+                mDetailsLoader = new MetadataLoader(mDialog.mStorage);
+                mDateFormat = DateFormat.getDateFormat(mDialog.getContext());
+                mTimeFormat = DateFormat.getTimeFormat(mDialog.getContext());
+            }
+            if (mDialog.getArguments().getBoolean(SHOW_THUMBNAILS) && mDialog.mStorage.isLocal()) {
+                mThumbnails = ThumbnailLoader.getInstance(mDialog.getContext());
+                mThumbnailSize = mDialog.getResources().getDimensionPixelSize(R.dimen.filepicker_thumbnail_size);
+            }
+
+            setListing(listing);
+        }
+
+        /**
+         * Replaces the whole content of the adapter
+         */
+        public void setListing(CompactListing listing) {
+            FolderMetrics.begin(mDialog.mFolderMetrics, FolderMetrics.ADAPTER);
+            mListing = listing;
+            dataAndIds = new ListingRows(listing);
+            setDataAndIds(dataAndIds);
+            notifyDataSetChanged();
+            countChecked();
+            FolderMetrics.end(mDialog.mFolderMetrics, FolderMetrics.ADAPTER);
+        }
 
-            ArrayList<Pair<Item, Long>> dataAndIds = new ArrayList<>(data.size());
-            for (SimpleFilePickerItem simpleFilePickerItem : data)
-                dataAndIds.add(new Pair<>(simpleFilePickerItem.getItem(), simpleFilePickerItem.getId()));
+        /**
+         * Adds rows for the entries added to the listing since, used while a folder is being
+         * loaded in background. Only the ids of the rows are kept, row objects are created for
+         * the rows being shown or filtered.
+         */
+        public void appendRows() {
+            FolderMetrics.begin(mDialog.mFolderMetrics, FolderMetrics.ITEMS);
+            dataAndIds.update();
+            FolderMetrics.end(mDialog.mFolderMetrics, FolderMetrics.ITEMS);
 
             setDataAndIds(dataAndIds);
+            notifyDataSetChanged();
+        }
+
+        /**
+         * Replaces the content with a newer state of the same folder. Rows are matched by id, so
+         * checked rows stay checked and the first visible row stays in place. The list is not
+         * redrawn at all if no row was inserted, removed or moved.
+         *
+         * @return true if the list was redrawn
+         */
+        public boolean updateListing(CompactListing listing) {
+            int oldSize = dataAndIds.size();
+            IdIndex oldIndices = new IdIndex(oldSize);
+            for (int i = 0; i < oldSize; i++)
+                oldIndices.put(dataAndIds.getId(i), i);
+
+            ListingRows rows = new ListingRows(listing);
+            int kept = 0;
+            int lastOldIndex = -1;
+            boolean moved = false;
+            for (int i = 0; i < rows.size(); i++) {
+                int oldIndex = oldIndices.get(rows.getId(i));
+                if (oldIndex >= 0) {
+                    kept++;
+                    moved |= oldIndex < lastOldIndex;
+                    lastOldIndex = oldIndex;
+                }
+            }
+            boolean changed = moved || kept != oldSize || kept != rows.size();
+
+            AbsListView listView = mDialog.getListView();
+            long anchorId = ListView.INVALID_ROW_ID;
+            int anchorTop = 0;
+            if (changed && listView != null && listView.getChildCount() > 0 && listView.getFirstVisiblePosition() < getCount()) {
+                anchorId = getItemId(listView.getFirstVisiblePosition());
+                anchorTop = listView.getChildAt(0).getTop();
+            }
+
+            mListing = listing;
+            dataAndIds = rows;
+            setDataAndIds(dataAndIds);
+            if (!changed)
+                return false;
+            countChecked();
+            notifyDataSetChanged();
+
+            if (anchorId != ListView.INVALID_ROW_ID)
+                for (int position = 0; position < getCount(); position++)
+                    if (getItemId(position) == anchorId) {
+                        listView.setSelectionFromTop(position, anchorTop);
+                        break;
+                    }
+            return true;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
         }
 
-        private AdvancedFilter mFilter = new AdvancedFilter(true, true){
+        private final ListingFilter mFilter = new ListingFilter();
+
+        /**
+         * Filter results together with the match they were built from, null for all rows
+         */
+        private static class ListingResults extends Filter.FilterResults {
+            final FilterIndex.Match match;
+
+            ListingResults(ListingRows rows, FilterIndex.Match match) {
+                values = rows;
+                count = rows.size();
+                this.match = match;
+            }
+
+            boolean isCurrent(ListingRows rows) {
+                return match == null ? values == rows : match.isCurrent(rows.getListing());
+            }
+        }
+
+        /**
+         * Builds the shown rows straight from the {@link FilterIndex} match instead of testing
+         * every row. Requests are handled one by one on the filter thread; each waits for typing to
+         * pause and is skipped if another keystroke came in meanwhile, as that one has queued its own
+         * request.
+         */
+        private class ListingFilter extends AdvancedFilter {
+            private FilterIndex mIndex;
+            private volatile ListingResults mResults;//Last results built
+
+            ListingFilter() {
+                super(true, true);
+            }
+
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                ListingRows rows = dataAndIds;
+                if (constraint == null || constraint.length() == 0)
+                    return mResults = new ListingResults(rows, null);
+
+                SystemClock.sleep(FILTER_DELAY_MS);
+                String typed = mTypedFilter;
+                ListingResults previous = mResults;
+                if (typed != null && !typed.equals(constraint.toString())) {
+                    //Superseded, the results of the newer request follow
+                    if (previous != null && previous.isCurrent(rows))
+                        return previous;
+                    return new ListingResults(new ListingRows(rows.getListing(), new int[0], 0), null);
+                }
+
+                CompactListing listing = rows.getListing();
+                if (mIndex == null || !mIndex.isCurrent(listing))
+                    mIndex = new FilterIndex(listing);
+                FilterIndex.Match match = mIndex.search(FilterIndex.normalize(constraint), previous == null ? null : previous.match);
+                return mResults = new ListingResults(new ListingRows(listing, match.getRows(), match.size()), match);
+            }
 
             @Override
             protected boolean matches(Item object, @NonNull CharSequence constraint) {
-                return matches(object.toString());
+                ListingResults results = mResults;
+                return results == null || results.match == null || results.match.contains(((ListingItem) object).getIndex());
             }
-        };
+
+            @Override
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                mShownMatch = results instanceof ListingResults ? ((ListingResults) results).match : null;
+                super.publishResults(constraint, results);
+                String query = constraint == null ? "" : constraint.toString();
+                if (mTypedAt > 0 && query.equals(mTypedFilter)) {
+                    PickerMetrics.filterApplied(mDialog.mMetricsListener, mDialog.mDialogMetricsListener, mDialog.getTag(),
+                            query.length(), getCount(), SystemClock.elapsedRealtime() - mTypedAt);
+                    mTypedAt = 0;
+                }
+            }
+        }
 
         @Override
         public AdvancedFilter getFilter() {
             return mFilter;
         }
 
+        /**
+         * Called on every change of the filter input, lets the filter skip requests already outdated
+         */
+        void onFilterTextChanged(CharSequence text) {
+            mTypedFilter = text.toString();
+            if (PickerMetrics.isEnabled(mDialog.mMetricsListener, mDialog.mDialogMetricsListener))
+                mTypedAt = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * @return number of rows bound since the last call
+         */
+        int takeBindCount() {
+            int count = mBindCount;
+            mBindCount = 0;
+            return count;
+        }
+
+        /**
+         * Shows the size and date of the row, or queues reading them if the listing does not hold
+         * them yet. A result arriving after the view was bound to another row is dropped.
+         */
+        private void bindDetails(final ItemViewHolder holder, ListingItem item) {
+            CompactListing listing = item.getListing();
+            int index = item.getIndex();
+            final boolean isFile = item.isFile();
+            long length = listing.getLength(index);
+            long lastModified = listing.getLastModified(index);
+            if (lastModified != CompactListing.UNKNOWN && (length != CompactListing.UNKNOWN || !isFile)) {
+                holder.setDetailsRequest(null);
+                if (!holder.showsDetails(length, lastModified))
+                    holder.bindDetails(formatDetails(isFile, length, lastModified), length, lastModified);
+                return;
+            }
+
+            MetadataLoader.Request request = holder.getDetailsRequest();
+            if (request != null && request.isFor(listing, index))
+                return;//Already being read
+            holder.bindDetails("", CompactListing.UNKNOWN, CompactListing.UNKNOWN);
+            holder.setDetailsRequest(mDetailsLoader.load(listing, index, new MetadataLoader.Callback() {
+                @Override
+                public void onMetadataLoaded(MetadataLoader.Request request, long length, long lastModified) {
+                    if (holder.getDetailsRequest() != request)
+                        return;
+                    holder.setDetailsRequest(null);
+                    holder.bindDetails(formatDetails(isFile, length, lastModified), length, lastModified);
+                }
+            }));
+        }
+
+        /**
+         * Shows the thumbnail of an image or video row from memory, or queues loading it. A
+         * pending request of a recycled view is cancelled before its file is read.
+         */
+        private void bindThumbnail(final ItemViewHolder holder, ListingItem item) {
+            CompactListing listing = item.getListing();
+            int index = item.getIndex();
+            if (!listing.isThumbnailChecked(index))
+                listing.setThumbnailSupported(index, item.isFile() && ThumbnailLoader.isSupported(item.getLabel()));
+            if (!listing.isThumbnailSupported(index)) {
+                holder.setThumbnailRequest(null);
+                holder.setThumbnail(null);
+                holder.setThumbnailOf(null, 0, 0);
+                return;
+            }
+            long id = listing.getId(index);
+            long length = listing.getLength(index);
+            long lastModified = listing.getLastModified(index);
+            if (holder.hasThumbnailOf(listing, id, lastModified))
+                return;//Already shown or being loaded
+
+            String path = mDialog.mStorage.getPath(listing, index);
+            Bitmap thumbnail = mThumbnails.getCached(path, length, lastModified, mThumbnailSize);
+            holder.setThumbnail(thumbnail);
+            holder.setThumbnailOf(listing, id, lastModified);
+            if (thumbnail != null) {
+                holder.setThumbnailRequest(null);
+                return;
+            }
+            holder.setThumbnailRequest(mThumbnails.load(path, length, lastModified, mThumbnailSize, new ThumbnailLoader.Callback() {
+                @Override
+                public void onThumbnailLoaded(ThumbnailLoader.Request request, Bitmap bitmap) {
+                    if (holder.getThumbnailRequest() != request)
+                        return;
+                    holder.setThumbnailRequest(null);
+                    holder.setThumbnail(bitmap);
+                }
+            }));
+        }
+
+        private String formatDetails(boolean isFile, long length, long lastModified) {
+            mDetails.setLength(0);
+            if (isFile)
+                mDetails.append(Formatter.formatShortFileSize(mDialog.getContext(), length)).append("  ");
+            mDate.setTime(lastModified);
+            mDetails.append(mDateFormat.format(mDate)).append(' ').append(mTimeFormat.format(mDate));
+            return mDetails.toString();
+        }
+
+        /**
+         * Drops the pending reads of sizes and dates
+         */
+        public void cancelDetails() {
+            if (mDetailsLoader != null)
+                mDetailsLoader.cancel();
+        }
+
+        private int resolveHighlightColor() {
+            TypedValue value = new TypedValue();
+            mDialog.getContext().getTheme().resolveAttribute(R.attr.colorAccent, value, true);
+            return value.data;
+        }
+
         @Override
-        public View getView(final int position, View convertView, ViewGroup parent) {
+        public View getView(int position, View convertView, ViewGroup parent) {
             ItemViewHolder viewHolder;
             if (convertView == null) {
                 convertView = LayoutInflater.from(mDialog.getContext()).inflate(mLayout, parent, false);
-                viewHolder = new ItemViewHolder(convertView);
-                convertView.setTag(viewHolder);
+                final ItemViewHolder holder = new ItemViewHolder(convertView);
+                if (mThumbnails != null)
+                    holder.setIconSize(mThumbnailSize);
+                convertView.setTag(holder);
+                convertView.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        onRowClicked(holder.getPosition());
+                    }
+                });
+                viewHolder = holder;
             } else
                 viewHolder = (ItemViewHolder) convertView.getTag();
 
-            Item item = getItem(position);
-            boolean isItemChecked = isItemChecked(position);
-            Spannable text;
-            if (mDialog.getArguments().getBoolean(HIGHLIGHT))
-                text = highlight(item.toString(), mDialog.getContext());
-            else
-                text = new SpannableString(item.toString());
-            viewHolder.bind(item, mode, isItemChecked, text);
-            convertView.setOnClickListener(new View.OnClickListener() {
-
-                @Override
-                public void onClick(View view) {
-                    toggleChecked(position);
-                    notifyDataSetChanged();
-
-                    List<Item> checkedItems = getCheckedItems();
-                    List<Item> checkedFolders = null;
-                    List<Item> checkedFiles = null;
-                    if (!checkedItems.isEmpty()) {
-                        checkedFolders = new ArrayList<>();
-                        checkedFiles = new ArrayList<>();
-                        for (Item checkedItem : checkedItems){
-                            if (checkedItem.isFile())
-                                checkedFiles.add(checkedItem);
-                            else
-                                checkedFolders.add(checkedItem);
-                        }
-                    }
+            if (mDialog.mFolderMetrics != null)
+                mBindCount++;
+            ListingItem item = (ListingItem) getItem(position);
+            boolean isFile = item.isFile();
+            int highlightOffset = -1;
+            int highlightLength = 0;
+            FilterIndex.Match match = mShownMatch;
+            if (mHighlight && match != null && match.isCurrent(mListing)) {
+                highlightOffset = match.getOffset(item.getIndex());
+                highlightLength = match.getLength();
+            }
+            if (mThumbnails != null)
+                bindThumbnail(viewHolder, item);
+            viewHolder.bind(position, isFile, mode, isItemChecked(position), item.getLabel(), highlightOffset, highlightLength, mHighlightColor);
+            if (mDetailsLoader != null)
+                bindDetails(viewHolder, item);
+            if (!isFile)
+                mDialog.onFolderRowBound();
+            return super.getView(position, convertView, parent);
+        }
 
-                    boolean isDirectChoiceMode = choiceMode == SINGLE_CHOICE_DIRECT;
-                    boolean isSelectEnabled = false;
-                    if (!isDirectChoiceMode) {
-                        boolean areItemsChecked = checkedItems.size() > 0;
-                        if (ITEM_FILE_ONLY.equals(itemMode)) {
-                            boolean areFoldersChecked = checkedFolders != null && checkedFolders.size() > 0;
-                            isSelectEnabled = !areFoldersChecked && areItemsChecked;
-                        } else {
-                            isSelectEnabled = areItemsChecked;
-                        }
-                    }
+        private void onRowClicked(int position) {
+            ListingItem item = (ListingItem) getItem(position);
+            boolean isFile = item.isFile();
+            toggleChecked(position);
+            if (choiceMode == MULTI_CHOICE) {
+                boolean checked = isItemChecked(position);
+                mSelection.setChecked(getItemId(position), isFile, checked);
+                if (mDialog.mSizeCalculator != null)
+                    mDialog.mSizeCalculator.setChecked(item.getListing(), item.getIndex(), checked);
+            } else
+                countChecked();//Checking a row may uncheck the previous one, and at most one is checked
+            notifyDataSetChanged();
+
+            int checkedCount = mSelection.getCount();
+            int checkedFolderCount = mSelection.getFolderCount();
+            boolean isDirectChoiceMode = choiceMode == SINGLE_CHOICE_DIRECT;
+            boolean isSelectEnabled = false;
+            if (!isDirectChoiceMode) {
+                boolean areItemsChecked = checkedCount > 0;
+                if (ITEM_FILE_ONLY.equals(itemMode)) {
+                    boolean areFoldersChecked = checkedFolderCount > 0;
+                    isSelectEnabled = !areFoldersChecked && areItemsChecked;
+                } else {
+                    isSelectEnabled = areItemsChecked;
+                }
+            }
 
-                    boolean isSingleFolderChecked = checkedFolders != null && checkedFolders.size() == 1;
-                    if (isDirectChoiceMode) {
-                        boolean isSingleItemChecked = checkedItems.size() == 1;
-                        if (CompositeMode.isImmediate(mode)) {
-                            if (isSingleFolderChecked)
-                                mDialog.pressNegativeButton();//Open
-                            else if (isSingleItemChecked)
-                                mDialog.pressPositiveButton();//Select
-                        } else {
-                            if (ITEM_FILE_ONLY.equals(itemMode))
-                                isSelectEnabled = isSingleItemChecked && !isSingleFolderChecked;
-                            else
-                                isSelectEnabled = isSingleItemChecked;
-                            mDialog.setButtons(isSingleFolderChecked, isSelectEnabled);
-                        }
-                    } else {
-                        mDialog.setButtons(isSingleFolderChecked, isSelectEnabled);
-                    }
+            boolean isSingleFolderChecked = checkedFolderCount == 1;
+            if (isDirectChoiceMode) {
+                boolean isSingleItemChecked = checkedCount == 1;
+                if (CompositeMode.isImmediate(mode)) {
+                    if (isSingleFolderChecked)
+                        mDialog.pressNegativeButton();//Open
+                    else if (isSingleItemChecked)
+                        mDialog.pressPositiveButton();//Select
+                } else {
+                    if (ITEM_FILE_ONLY.equals(itemMode))
+                        isSelectEnabled = isSingleItemChecked && !isSingleFolderChecked;
+                    else
+                        isSelectEnabled = isSingleItemChecked;
+                    mDialog.setButtons(isSingleFolderChecked, isSelectEnabled);
                 }
-            });
-            return super.getView(position, convertView, parent);
+            } else {
+                mDialog.setButtons(isSingleFolderChecked, isSelectEnabled);
+            }
+        }
+
+        Selection getSelection() {
+            return mSelection;
+        }
+
+        /**
+         * Unchecks all rows
+         */
+        void clearChecked() {
+            for (int i = 0; i < getCount(); i++)
+                if (isItemChecked(i))
+                    toggleChecked(i);
+            mSelection.clear();
+            onSelectionChanged();
+        }
+
+        /**
+         * Counts the checked rows again, needed when rows are replaced rather than toggled
+         */
+        private void countChecked() {
+            mSelection.clear();
+            for (long id : getCheckedItemIds()) {
+                int index = mListing.indexOfId(id);
+                if (index >= 0)
+                    mSelection.setChecked(id, mListing.isFile(index), true);
+            }
+            onSelectionChanged();
+        }
+
+        /**
+         * Hands all checked rows to the size calculator, if the size of the selection is shown.
+         * A single toggled row is handed over as a change, see {@link #onRowClicked(int)}.
+         */
+        void onSelectionChanged() {
+            if (mDialog.mSizeCalculator == null)
+                return;
+            List<Long> checked = getCheckedItemIds();
+            List<Integer> indices = new ArrayList<>(checked.size());
+            for (long id : checked) {
+                int index = mListing.indexOfId(id);
+                if (index >= 0)
+                    indices.add(index);
+            }
+            mDialog.mSizeCalculator.setSelection(mListing, indices);
         }
     }
 
     protected final void pressNegativeButton(){
+        if (isNavigatingInPlace()) {
+            openCheckedFolder();
+            return;
+        }
 //        if (acceptsNegativeButtonPress()) {
             getDialog().dismiss();
             callResultListener(DialogInterface.BUTTON_NEGATIVE, null);
@@ -466,20 +1564,24 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         selectButton.setEnabled(isSelectEnabled);
     }
 
-    private static boolean isExternalStorageRoot(String path) {
-        String rootExternalStoragePath = Environment.getExternalStorageDirectory().getAbsolutePath();
-        return rootExternalStoragePath.equals(path);
+    private boolean isStorageRoot(String path) {
+        return mStorage.getRoot().equals(path);
     }
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
+        ListingCache.getInstance().register(context);
         if (context instanceof InteractionListenerString)
             mListenerString = (InteractionListenerString) context;
         if (context instanceof InteractionListenerInt)
             mListenerInt = (InteractionListenerInt) context;
         if (mListenerString == null && mListenerInt == null)
             throw new RuntimeException(context.toString() + " must implement InteractionListenerString or InteractionListenerInt");
+        if (context instanceof SearchListener)
+            mSearchListener = (SearchListener) context;
+        if (context instanceof PickerMetrics.Listener)
+            mMetricsListener = (PickerMetrics.Listener) context;
 
     }
 
@@ -488,12 +1590,14 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
         super.onDetach();
         mListenerInt = null;
         mListenerString = null;
+        mSearchListener = null;
+        mMetricsListener = null;
     }
 
     @Override
     protected void onDialogShown() {
         super.onDialogShown();
-        setPositiveButtonEnabled(!ItemMode.ITEM_FILE_ONLY.equals(mode.getItemMode()));
+        setPositiveButtonEnabled(!ItemMode.ITEM_FILE_ONLY.equals(mode.getItemMode()) && !isLoading());
     }
 
     public enum CompositeMode {
@@ -546,4 +1650,11 @@ public class SimpleFilePickerDialog extends CustomListDialog<SimpleFilePickerDia
     public interface InteractionListenerInt extends OnDialogResultListener {
         void showListItemDialog(int titleResId, String folderPath, SimpleFilePickerDialog.CompositeMode mode, String dialogTag);
     }
+
+    /**
+     * Optionally implemented by the host of a dialog with {@link #searchSubtree(boolean, int)} enabled
+     */
+    public interface SearchListener {
+        void onSubtreeSearchFinished(String dialogTag, SubtreeSearch.Stats stats);
+    }
 }
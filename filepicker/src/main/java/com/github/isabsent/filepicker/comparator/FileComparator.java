@@ -1,9 +1,11 @@
 package com.github.isabsent.filepicker.comparator;
 
+import com.github.isabsent.filepicker.entity.FileEntry;
+
 import java.io.File;
 import java.util.Comparator;
 
-abstract class FileComparator implements Comparator<File> {
+abstract class FileComparator implements Comparator<FileEntry> {
     private boolean ascending = true;
 
     FileComparator(boolean asc){
@@ -14,7 +16,7 @@ abstract class FileComparator implements Comparator<File> {
         this(true);
     }
 
-    public int compare(File f1, File f2){
+    public int compare(FileEntry f1, FileEntry f2){
         if (f1.isDirectory() && f2.isFile())
             return -1;
         else if (f1.isFile() && f2.isDirectory())
@@ -23,5 +25,16 @@ abstract class FileComparator implements Comparator<File> {
             return comp((ascending ? f1 : f2), (ascending ? f2 : f1));
     }
 
-    protected abstract int comp(File f1, File f2);
+    /**
+     * Same order as {@link #compare(FileEntry, FileEntry)}, kept from when this class compared files
+     *
+     * @deprecated compare {@link FileEntry} snapshots instead, this reads the type of both files
+     * and builds both keys again on every call
+     */
+    @Deprecated
+    public int compare(File f1, File f2){
+        return compare(new FileEntry(f1), new FileEntry(f2));
+    }
+
+    protected abstract int comp(FileEntry f1, FileEntry f2);
 }
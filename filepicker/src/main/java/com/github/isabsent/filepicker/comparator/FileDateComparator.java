@@ -0,0 +1,21 @@
+package com.github.isabsent.filepicker.comparator;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+/**
+ * Orders entries by modification time, entries modified at the same time by name
+ */
+public class FileDateComparator extends FileComparator {
+    public FileDateComparator(boolean asc) {
+        super(asc);
+    }
+
+    @Override
+    protected int comp(FileEntry f1, FileEntry f2) {
+        long t1 = f1.lastModified();
+        long t2 = f2.lastModified();
+        if (t1 != t2)
+            return t1 < t2 ? -1 : 1;
+        return f1.getNameKey().compareTo(f2.getNameKey());
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.isabsent.filepicker.comparator;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+/**
+ * Orders entries by extension, entries with the same extension by name
+ */
+public class FileExtensionComparator extends FileComparator {
+    public FileExtensionComparator(boolean asc) {
+        super(asc);
+    }
+
+    @Override
+    protected int comp(FileEntry f1, FileEntry f2) {
+        int result = f1.getExtensionKey().compareTo(f2.getExtensionKey());
+        return result != 0 ? result : f1.getNameKey().compareTo(f2.getNameKey());
+    }
+}
@@ -1,29 +1,59 @@
 package com.github.isabsent.filepicker.comparator;
 
+import com.github.isabsent.filepicker.entity.FileEntry;
+
 import java.io.File;
 import java.text.Collator;
+import java.util.Comparator;
 
 public class FileNameComparator extends FileComparator {
     public FileNameComparator(boolean asc) {
         super(asc);
     }
 
+    /**
+     * Same order for plain files, as this class compared them before it took {@link FileEntry}
+     * snapshots, for code that sorts <code>File</code> lists with it
+     *
+     * @deprecated sort {@link FileEntry} lists instead, each comparison of this comparator reads
+     * the type of both files and builds both keys again
+     */
+    @Deprecated
+    public static Comparator<File> forFiles(boolean asc) {
+        final FileNameComparator comparator = new FileNameComparator(asc);
+        return new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return comparator.compare(f1, f2);
+            }
+        };
+    }
+
     @Override
-    protected int comp(File f1, File f2) {
+    protected int comp(FileEntry f1, FileEntry f2) {
 //        return f1.getName().toLowerCase().compareTo(f2.getName().toLowerCase());
-        return compareNatural(f1.getName().toLowerCase(), f2.getName().toLowerCase());
+        return f1.getNameKey().compareTo(f2.getNameKey());
     }
 
 //    http://stackoverflow.com/questions/104599/sort-on-a-string-that-may-contain-a-number
 //    http://www.davekoelle.com/files/AlphanumComparator.java
 //    http://www.eekboom.com/java/compareNatural/src/com/eekboom/utils/Strings.java
     public static int compareNatural(String s, String t) {
-        return compareNatural(s, t, false, Collator.getInstance());
+        Collator collator = NaturalSortKey.collator();
+        synchronized (collator) {
+            return compareNatural(s, 0, t, 0, collator);
+        }
+    }
+
+    static int compareNatural(String s, int sIndex, String t, int tIndex, Collator collator) {
+        return compareNatural(s, sIndex, t, tIndex, false, collator);
     }
 
     /**
      * @param s             first string
+     * @param sIndex        index in <code>s</code> to start from, must be at a subword boundary
      * @param t             second string
+     * @param tIndex        index in <code>t</code> to start from, must be at a subword boundary
      * @param caseSensitive treat characters differing in case only as equal - will be ignored if a collator is given
      * @param collator      used to compare subwords that aren't numbers - if null, characters will be compared
      *                      individually based on their Unicode value
@@ -31,10 +61,7 @@ public class FileNameComparator extends FileComparator {
      *         a value less than zero iff <code>s</code> lexicographically precedes <code>t</code>
      *         and a value larger than zero iff <code>s</code> lexicographically follows <code>t</code>
      */
-    private static int compareNatural(String s, String t, boolean caseSensitive, Collator collator) {
-        int sIndex = 0;
-        int tIndex = 0;
-
+    private static int compareNatural(String s, int sIndex, String t, int tIndex, boolean caseSensitive, Collator collator) {
         int sLength = s.length();
         int tLength = t.length();
 
@@ -0,0 +1,23 @@
+package com.github.isabsent.filepicker.comparator;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+/**
+ * Orders files by size and folders by name, files of the same size by name
+ */
+public class FileSizeComparator extends FileComparator {
+    public FileSizeComparator(boolean asc) {
+        super(asc);
+    }
+
+    @Override
+    protected int comp(FileEntry f1, FileEntry f2) {
+        if (f1.isFile() && f2.isFile()) {
+            long l1 = f1.length();
+            long l2 = f2.length();
+            if (l1 != l2)
+                return l1 < l2 ? -1 : 1;
+        }
+        return f1.getNameKey().compareTo(f2.getNameKey());
+    }
+}
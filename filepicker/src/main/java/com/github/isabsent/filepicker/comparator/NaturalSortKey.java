@@ -0,0 +1,304 @@
+package com.github.isabsent.filepicker.comparator;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A file name split once into digit runs and subwords, so that sorting compares prepared
+ * tokens instead of re-scanning and re-collating the names on every comparison.
+ * <p>
+ * {@link #compareTo} gives the same order as {@link FileNameComparator#compareNatural(String, String)}
+ * applied to the lower-cased names. Subwords made only of printable ASCII are compared with a
+ * table of primary ranks taken from the collator, other subwords and subwords equal at the
+ * primary strength only with their {@link CollationKey}.
+ */
+public final class NaturalSortKey implements Comparable<NaturalSortKey> {
+    private static final String[] ASCII_SAFE_LANGUAGES = {
+            "en", "de", "fr", "it", "pt", "nl", "es", "ru", "uk", "ja", "zh", "ko"
+    };
+
+    private static final int IGNORABLE = 0;
+    private static final int OBJECT_BYTES = 32;
+    private static final int COLLATION_KEY_BYTES = 24;
+    private static final int WEIGHTS_PER_CHAR = 3;//Primary, secondary and tertiary weight of a collation key
+
+    private static Locale sLocale;
+    private static Collator sCollator;
+    private static int[] sAsciiRanks;
+
+    private final String value;
+    private final int[] bounds;
+    private final boolean[] ascii;
+    private final AtomicReferenceArray<CollationKey> keys;//Built lazily by any thread comparing the key
+    private final Collator collator;
+    private final int[] asciiRanks;
+
+    private NaturalSortKey(String value, int[] bounds, boolean[] ascii, Collator collator, int[] asciiRanks) {
+        this.value = value;
+        this.bounds = bounds;
+        this.ascii = ascii;
+        this.collator = collator;
+        this.asciiRanks = asciiRanks;
+        keys = new AtomicReferenceArray<>(ascii.length);
+        for (int i = 0; i < ascii.length; i++)
+            if (!isDigitToken(i) && (asciiRanks == null || !ascii[i]))
+                collationKey(i);
+    }
+
+    /**
+     * @param name file name, lower-cased here with the default locale
+     */
+    public static NaturalSortKey of(String name) {
+        String value = name.toLowerCase();
+        int length = value.length();
+        int[] bounds = new int[length + 1];
+        boolean[] ascii = new boolean[length];
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            bounds[count] = i;
+            boolean digit = Character.isDigit(value.charAt(i));
+            boolean isAscii = true;
+            do {
+                char c = value.charAt(i);
+                if (c < 0x20 || c > 0x7e)
+                    isAscii = false;
+                i++;
+            } while (i < length && Character.isDigit(value.charAt(i)) == digit);
+            ascii[count] = isAscii;
+            count++;
+        }
+        bounds[count] = length;
+
+        synchronized (NaturalSortKey.class) {
+            updateCollator();
+            return new NaturalSortKey(value, Arrays.copyOf(bounds, count + 1), Arrays.copyOf(ascii, count), sCollator, sAsciiRanks);
+        }
+    }
+
+    /**
+     * Returns a collator for the current default locale, shared between calls. Callers must
+     * synchronize on the returned instance.
+     */
+    static Collator collator() {
+        synchronized (NaturalSortKey.class) {
+            updateCollator();
+            return sCollator;
+        }
+    }
+
+    private static void updateCollator() {
+        Locale locale = Locale.getDefault();
+        if (sCollator == null || !locale.equals(sLocale)) {
+            sLocale = locale;
+            sCollator = Collator.getInstance(locale);
+            sAsciiRanks = buildAsciiRanks(sCollator, locale);
+        }
+    }
+
+    /**
+     * Primary ranks of the printable ASCII characters: characters the collator only tells apart at
+     * a later strength share a rank, characters without a primary weight, such as space and '-'
+     * on many collators, get {@link #IGNORABLE}. Upper case letters never occur in a key and take
+     * the rank of their lower case letter.
+     *
+     * @return the ranks indexed by character, or null if the locale may tailor ASCII with
+     * contractions or expansions
+     */
+    static int[] buildAsciiRanks(Collator collator, Locale locale) {
+        if (Arrays.asList(ASCII_SAFE_LANGUAGES).indexOf(locale.getLanguage()) < 0)
+            return null;
+
+        Collator primary = (Collator) collator.clone();
+        primary.setStrength(Collator.PRIMARY);
+        List<String> chars = new ArrayList<>();
+        for (char c = 0x20; c < 0x7f; c++)
+            if ((c < 'A' || c > 'Z') && primary.compare(String.valueOf(c), "") != 0)
+                chars.add(String.valueOf(c));
+        Collections.sort(chars, primary);
+        int[] ranks = new int[0x7f];
+        int rank = IGNORABLE;
+        for (int i = 0; i < chars.size(); i++) {
+            if (i == 0 || primary.compare(chars.get(i - 1), chars.get(i)) != 0)
+                rank++;
+            ranks[chars.get(i).charAt(0)] = rank;
+        }
+        for (char c = 'A'; c <= 'Z'; c++)
+            ranks[c] = ranks[Character.toLowerCase(c)];
+        return ranks;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return rough number of bytes retained by the key, with the collation keys built so far but
+     * without the collator and rank table shared by all keys
+     */
+    public long estimateSize() {
+        int count = tokenCount();
+        long size = OBJECT_BYTES + estimateSize(value.length()) + arraySize(4L * bounds.length) + arraySize(count)
+                + OBJECT_BYTES + arraySize(4L * count);
+        for (int i = 0; i < count; i++)
+            if (keys.get(i) != null) {
+                int length = bounds[i + 1] - bounds[i];
+                size += COLLATION_KEY_BYTES + estimateSize(length) + estimateSize(WEIGHTS_PER_CHAR * length + 1);
+            }
+        return size;
+    }
+
+    /**
+     * @return rough number of bytes retained by a string of the length, with UTF-16 content
+     */
+    public static long estimateSize(int length) {
+        return 24 + arraySize(2L * length);
+    }
+
+    private static long arraySize(long contentBytes) {
+        return (16 + contentBytes + 7) & ~7L;
+    }
+
+    private int tokenCount() {
+        return ascii.length;
+    }
+
+    private boolean isDigitToken(int token) {
+        return Character.isDigit(value.charAt(bounds[token]));
+    }
+
+    private CollationKey collationKey(int token) {
+        CollationKey key = keys.get(token);
+        if (key == null) {
+            synchronized (collator) {
+                key = collator.getCollationKey(value.substring(bounds[token], bounds[token + 1]));
+            }
+            keys.set(token, key);
+        }
+        return key;
+    }
+
+    @Override
+    public int compareTo(NaturalSortKey other) {
+        int i = 0;
+        int j = 0;
+        int sCount = tokenCount();
+        int tCount = other.tokenCount();
+        while (true) {
+            if (i == sCount && j == tCount)
+                return 0;
+            if (i == sCount)
+                return -1;
+            if (j == tCount)
+                return 1;
+
+            boolean sDigit = isDigitToken(i);
+            boolean tDigit = other.isDigitToken(j);
+            if (sDigit && tDigit) {
+                int result = compareNumbers(other, i, j);
+                if (result != 0)
+                    return result;
+            } else if (!sDigit && !tDigit) {
+                int result = compareWords(other, i, j);
+                if (result != 0)
+                    return result;
+            } else {
+                // A number against a word: subword boundaries depend on both names here,
+                // so finish with the original scan from the current position
+                synchronized (collator) {
+                    return FileNameComparator.compareNatural(value, bounds[i], other.value, other.bounds[j], collator);
+                }
+            }
+            i++;
+            j++;
+        }
+    }
+
+    private int compareNumbers(NaturalSortKey other, int i, int j) {
+        String s = value;
+        String t = other.value;
+        int sIndex = bounds[i];
+        int sEnd = bounds[i + 1];
+        int tIndex = other.bounds[j];
+        int tEnd = other.bounds[j + 1];
+
+        int sLeadingZeroCount = 0;
+        while (sIndex < sEnd && s.charAt(sIndex) == '0') {
+            sLeadingZeroCount++;
+            sIndex++;
+        }
+        int tLeadingZeroCount = 0;
+        while (tIndex < tEnd && t.charAt(tIndex) == '0') {
+            tLeadingZeroCount++;
+            tIndex++;
+        }
+        int sDigits = sEnd - sIndex;
+        int tDigits = tEnd - tIndex;
+        if (sDigits == 0 && tDigits == 0)
+            return 0;
+        if (sDigits == 0)
+            return -1;
+        if (tDigits == 0)
+            return 1;
+        if (sDigits != tDigits)
+            return sDigits < tDigits ? -1 : 1;
+
+        int diff = 0;
+        for (; sIndex < sEnd && diff == 0; sIndex++, tIndex++)
+            diff = s.charAt(sIndex) - t.charAt(tIndex);
+
+        boolean sAtEnd = sEnd == s.length();
+        boolean tAtEnd = tEnd == t.length();
+        if (sAtEnd && tAtEnd)
+            return diff != 0 ? diff : sLeadingZeroCount - tLeadingZeroCount;
+        if (diff != 0)
+            return diff;
+        if (sAtEnd)
+            return -1;
+        if (tAtEnd)
+            return 1;
+        return 0;
+    }
+
+    private int compareWords(NaturalSortKey other, int i, int j) {
+        if (asciiRanks != null && asciiRanks == other.asciiRanks && ascii[i] && other.ascii[j]) {
+            int result = comparePrimary(other, i, j);
+            if (result != 0)
+                return result;
+            int length = bounds[i + 1] - bounds[i];
+            if (length == other.bounds[j + 1] - other.bounds[j] && value.regionMatches(bounds[i], other.value, other.bounds[j], length))
+                return 0;
+            //Equal at the primary strength only, such as "a-b" and "ab": later strengths decide
+        }
+        return collationKey(i).compareTo(other.collationKey(j));
+    }
+
+    /**
+     * Compares two ASCII subwords by the primary ranks of their characters, skipping ignorable ones
+     */
+    private int comparePrimary(NaturalSortKey other, int i, int j) {
+        int sIndex = bounds[i];
+        int sEnd = bounds[i + 1];
+        int tIndex = other.bounds[j];
+        int tEnd = other.bounds[j + 1];
+        while (true) {
+            while (sIndex < sEnd && asciiRanks[value.charAt(sIndex)] == IGNORABLE)
+                sIndex++;
+            while (tIndex < tEnd && asciiRanks[other.value.charAt(tIndex)] == IGNORABLE)
+                tIndex++;
+            if (sIndex == sEnd || tIndex == tEnd)
+                return sIndex == sEnd ? (tIndex == tEnd ? 0 : -1) : 1;
+            int diff = asciiRanks[value.charAt(sIndex)] - asciiRanks[other.value.charAt(tIndex)];
+            if (diff != 0)
+                return diff;
+            sIndex++;
+            tIndex++;
+        }
+    }
+}
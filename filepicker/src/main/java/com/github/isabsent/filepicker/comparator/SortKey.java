@@ -0,0 +1,46 @@
+package com.github.isabsent.filepicker.comparator;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.util.Comparator;
+
+/**
+ * Orders a listing can be shown in. Folders always come before files.
+ */
+public enum SortKey {
+    NAME, SIZE, DATE, EXTENSION;
+
+    public Comparator<FileEntry> comparator(boolean ascending) {
+        switch (this) {
+            case SIZE:
+                return new FileSizeComparator(ascending);
+            case DATE:
+                return new FileDateComparator(ascending);
+            case EXTENSION:
+                return new FileExtensionComparator(ascending);
+            case NAME:
+            default:
+                return new FileNameComparator(ascending);
+        }
+    }
+
+    /**
+     * Reads everything the comparator of this key looks at, so that sorting afterwards neither
+     * goes back to the file system nor builds keys
+     */
+    public void prepare(FileEntry entry) {
+        entry.getNameKey();
+        switch (this) {
+            case SIZE:
+                if (entry.isFile())
+                    entry.length();
+                break;
+            case DATE:
+                entry.lastModified();
+                break;
+            case EXTENSION:
+                entry.getExtensionKey();
+                break;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.github.isabsent.filepicker.entity;
+
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * Compact store for the rows of a folder: one shared parent path, all names packed into a
+ * single char pool addressed by offsets, the entry types in bit sets, and the row ids, sizes and
+ * modification times in <code>long</code> arrays. A name is turned into
+ * a {@link String} only when a row asks for it, and the strings of the most recently used rows
+ * are kept in a small window cache, so off-screen entries cost a few bytes each.
+ * <p>
+ * Every row has an id no other row of the listing has. It is the 64-bit hash of the name unless
+ * an earlier row already took that value, so ids stay the same when a folder is listed again.
+ * <p>
+ * Every method locks the listing, as the filter, the search and the loaders read it on their
+ * threads while the main thread applies changes. A caller reading several values of a row whose
+ * index could go stale in between locks the listing itself.
+ */
+public class CompactListing {
+    public static final long UNKNOWN = -1;
+    private static final int WINDOW_SIZE = 256;//Power of two, a few screens of rows
+
+    private final String parent;
+    private char[] pool;
+    private int poolSize;
+    private int[] offsets;
+    private long[] ids;
+    private long[] lengths;
+    private long[] lastModified;
+    private final BitSet files = new BitSet();
+    private final BitSet folders = new BitSet();
+    private final BitSet thumbnailsChecked = new BitSet();//Rows whose thumbnail support is known
+    private final BitSet thumbnails = new BitSet();
+    private int size;
+    private int modCount;
+    private IdIndex idIndex;//Holds every id; indices are stale after rows were inserted before others
+    private boolean idIndicesStale;
+
+    private final int[] windowIndices = new int[WINDOW_SIZE];
+    private final String[] windowNames = new String[WINDOW_SIZE];
+
+    public CompactListing(String parent, int expectedSize) {
+        this.parent = parent;
+        pool = new char[Math.max(16, expectedSize * 12)];
+        offsets = new int[expectedSize + 1];
+        ids = new long[expectedSize];
+        lengths = new long[expectedSize];
+        lastModified = new long[expectedSize];
+        idIndex = new IdIndex(expectedSize);
+        clearWindow();
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends a row with the size and modification time the entry has read so far
+     */
+    public synchronized void add(FileEntry entry) {
+        String name = entry.getName();
+        insertRow(size, name, entry.isDirectory(), entry.isFile(), nameId(name), entry.getKnownLength(), entry.getKnownLastModified());
+    }
+
+    /**
+     * Appends a row without size and modification time
+     */
+    public synchronized void add(String name, boolean isDirectory, boolean isFile) {
+        insertRow(size, name, isDirectory, isFile, nameId(name), UNKNOWN, UNKNOWN);
+    }
+
+    public synchronized void addAll(CompactListing other) {
+        ensureCapacity(size + other.size, poolSize + other.poolSize);
+        for (int i = 0; i < other.size; i++)
+            insertRow(size, other.getName(i), other.isDirectory(i), other.isFile(i), other.getId(i), other.lengths[i], other.lastModified[i]);
+    }
+
+    /**
+     * @return a snapshot of every row, see {@link #getEntry(StorageProvider, int)}
+     */
+    public synchronized FileEntry[] toEntries(StorageProvider storage) {
+        FileEntry[] entries = new FileEntry[size];
+        for (int i = 0; i < size; i++)
+            entries[i] = getEntry(storage, i);
+        return entries;
+    }
+
+    /**
+     * @param order   indices of the rows in their new order
+     * @param entries snapshot taken with {@link #toEntries(StorageProvider)}, sizes and modification times read
+     *                from it since are kept in the copy
+     * @return a copy with the rows in the given order, keeping their ids
+     */
+    public synchronized CompactListing reorder(int[] order, FileEntry[] entries) {
+        CompactListing sorted = new CompactListing(parent, size);
+        sorted.ensureCapacity(size, poolSize);
+        for (int index : order) {
+            FileEntry entry = entries[index];
+            sorted.insertRow(sorted.size, getName(index), isDirectory(index), isFile(index), ids[index],
+                    entry.getKnownLength(), entry.getKnownLastModified());
+        }
+        return sorted;
+    }
+
+    /**
+     * Inserts a row, shifting the following rows down by one
+     */
+    public synchronized void insert(int index, FileEntry entry) {
+        String name = entry.getName();
+        insertRow(index, name, entry.isDirectory(), entry.isFile(), nameId(name), entry.getKnownLength(), entry.getKnownLastModified());
+    }
+
+    /**
+     * @param id preferred id of the row, the next free value is taken if another row has it
+     */
+    private void insertRow(int index, String name, boolean isDirectory, boolean isFile, long id, long fileLength, long modified) {
+        while (idIndex.get(id) >= 0)
+            id++;
+        idIndex.put(id, index);
+        if (index < size)
+            idIndicesStale = true;
+        int length = name.length();
+        ensureCapacity(size + 1, poolSize + length);
+        int start = offsets[index];
+        System.arraycopy(pool, start, pool, start + length, poolSize - start);
+        name.getChars(0, length, pool, start);
+        poolSize += length;
+        System.arraycopy(offsets, index + 1, offsets, index + 2, size - index);
+        for (int i = index + 1; i <= size + 1; i++)
+            offsets[i] += length;
+        offsets[index + 1] = start + length;
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        System.arraycopy(lengths, index, lengths, index + 1, size - index);
+        lengths[index] = fileLength;
+        System.arraycopy(lastModified, index, lastModified, index + 1, size - index);
+        lastModified[index] = modified;
+        shiftBits(files, index, 1);
+        shiftBits(folders, index, 1);
+        shiftBits(thumbnailsChecked, index, 1);
+        shiftBits(thumbnails, index, 1);
+        files.set(index, isFile);
+        folders.set(index, isDirectory);
+        size++;
+        modCount++;
+        if (index < size - 1)
+            clearWindow();
+    }
+
+    /**
+     * @return index of the row with the id, or -1 if there is none
+     */
+    public synchronized int indexOfId(long id) {
+        if (idIndicesStale)
+            rebuildIdIndex();
+        return idIndex.get(id);
+    }
+
+    private void rebuildIdIndex() {
+        idIndex = new IdIndex(size);
+        for (int i = 0; i < size; i++)
+            idIndex.put(ids[i], i);
+        idIndicesStale = false;
+    }
+
+    /**
+     * Removes every row whose name is in the set, in one pass
+     *
+     * @return the number of removed rows
+     */
+    public synchronized int removeAll(Set<String> names) {
+        int kept = 0;
+        int keptPoolSize = 0;
+        for (int i = 0; i < size; i++) {
+            int start = offsets[i];
+            int length = offsets[i + 1] - start;
+            if (names.contains(getName(i)))
+                continue;
+            System.arraycopy(pool, start, pool, keptPoolSize, length);
+            offsets[kept] = keptPoolSize;
+            ids[kept] = ids[i];
+            lengths[kept] = lengths[i];
+            lastModified[kept] = lastModified[i];
+            files.set(kept, files.get(i));
+            folders.set(kept, folders.get(i));
+            thumbnailsChecked.set(kept, thumbnailsChecked.get(i));
+            thumbnails.set(kept, thumbnails.get(i));
+            keptPoolSize += length;
+            kept++;
+        }
+        int removed = size - kept;
+        offsets[kept] = keptPoolSize;
+        files.clear(kept, size);
+        folders.clear(kept, size);
+        thumbnailsChecked.clear(kept, size);
+        thumbnails.clear(kept, size);
+        poolSize = keptPoolSize;
+        size = kept;
+        modCount++;
+        clearWindow();
+        if (removed > 0)
+            rebuildIdIndex();
+        return removed;
+    }
+
+    /**
+     * Releases the spare capacity left by growing, called once a listing is complete
+     */
+    public synchronized void trimToSize() {
+        if (pool.length != poolSize) {
+            char[] trimmed = new char[poolSize];
+            System.arraycopy(pool, 0, trimmed, 0, poolSize);
+            pool = trimmed;
+        }
+        if (offsets.length != size + 1) {
+            int[] trimmed = new int[size + 1];
+            System.arraycopy(offsets, 0, trimmed, 0, size + 1);
+            offsets = trimmed;
+            ids = Arrays.copyOf(ids, size);
+            lengths = Arrays.copyOf(lengths, size);
+            lastModified = Arrays.copyOf(lastModified, size);
+        }
+    }
+
+    public synchronized long getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return size of the entry, or {@link #UNKNOWN} if it was not read when the row was added
+     */
+    public synchronized long getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * @return modification time of the entry, or {@link #UNKNOWN} if it was not read when the row was added
+     */
+    public synchronized long getLastModified(int index) {
+        return lastModified[index];
+    }
+
+    /**
+     * Synchronized with the mutators because the list filter reads names on a worker thread
+     */
+    public synchronized String getName(int index) {
+        int slot = index & (WINDOW_SIZE - 1);
+        if (windowIndices[slot] != index) {
+            windowNames[slot] = new String(pool, offsets[index], offsets[index + 1] - offsets[index]);
+            windowIndices[slot] = index;
+        }
+        return windowNames[slot];
+    }
+
+    public synchronized int getNameLength(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Copies the name of a row to a char array without creating a string
+     */
+    public synchronized void getNameChars(int index, char[] dest, int destStart) {
+        System.arraycopy(pool, offsets[index], dest, destStart, offsets[index + 1] - offsets[index]);
+    }
+
+    /**
+     * Counts inserted and removed rows, so that data derived from a listing can tell it is stale
+     */
+    public synchronized int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * @param storage provider the listing was read from, asked for values the row does not hold
+     * @return an entry for the row carrying the size and modification time stored with it
+     */
+    public synchronized FileEntry getEntry(StorageProvider storage, int index) {
+        String name = getName(index);
+        return new FileEntry(storage, storage.getChild(parent, name), name, isDirectory(index), isFile(index),
+                lengths[index], lastModified[index]);
+    }
+
+    /**
+     * Stores size and modification time read after the row was added
+     *
+     * @return false if the row at the index no longer has the id
+     */
+    public synchronized boolean setAttributes(int index, long id, long length, long lastModified) {
+        if (index >= size || ids[index] != id)
+            return false;
+        lengths[index] = length;
+        this.lastModified[index] = lastModified;
+        return true;
+    }
+
+    public synchronized boolean isFile(int index) {
+        return files.get(index);
+    }
+
+    public synchronized boolean isDirectory(int index) {
+        return folders.get(index);
+    }
+
+    /**
+     * @return true if {@link #setThumbnailSupported(int, boolean)} was called for the row
+     */
+    public synchronized boolean isThumbnailChecked(int index) {
+        return thumbnailsChecked.get(index);
+    }
+
+    public synchronized boolean isThumbnailSupported(int index) {
+        return thumbnails.get(index);
+    }
+
+    /**
+     * Remembers whether the row can have a thumbnail, so its type is looked up once per row
+     * rather than on every bind
+     */
+    public synchronized void setThumbnailSupported(int index, boolean supported) {
+        thumbnails.set(index, supported);
+        thumbnailsChecked.set(index);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the name
+     */
+    private static long nameId(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void ensureCapacity(int rows, int chars) {
+        if (rows + 1 > offsets.length) {
+            int[] grown = new int[Math.max(rows + 1, offsets.length * 2)];
+            System.arraycopy(offsets, 0, grown, 0, size + 1);
+            offsets = grown;
+            ids = Arrays.copyOf(ids, grown.length - 1);
+            lengths = Arrays.copyOf(lengths, grown.length - 1);
+            lastModified = Arrays.copyOf(lastModified, grown.length - 1);
+        }
+        if (chars > pool.length) {
+            char[] grown = new char[Math.max(chars, pool.length * 2)];
+            System.arraycopy(pool, 0, grown, 0, poolSize);
+            pool = grown;
+        }
+    }
+
+    private void shiftBits(BitSet bits, int from, int by) {
+        for (int i = size - 1; i >= from; i--)
+            bits.set(i + by, bits.get(i));
+    }
+
+    private synchronized void clearWindow() {
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            windowIndices[i] = -1;
+            windowNames[i] = null;
+        }
+    }
+}
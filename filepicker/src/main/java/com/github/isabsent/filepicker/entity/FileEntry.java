@@ -0,0 +1,174 @@
+package com.github.isabsent.filepicker.entity;
+
+import com.github.isabsent.filepicker.comparator.NaturalSortKey;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.io.File;
+
+/**
+ * Snapshot of a directory entry taken once per listing. The type is read when the entry is
+ * created, size and modification time on first access, so sorting and filtering never go
+ * back to the file system. An entry of a local file reads them from the file, any other entry
+ * asks its {@link StorageProvider}. Entries of cached listings are shared between threads, so the values
+ * read lazily are volatile; reading one twice concurrently is harmless.
+ */
+public class FileEntry {
+    private static final long UNKNOWN = -1;
+    private static final int OBJECT_BYTES = 56;
+    private static final int FILE_BYTES = 32;
+
+    private final File file;//Null for entries of a provider
+    private final StorageProvider storage;
+    private final String path;
+    private final String name;
+    private final boolean isDirectory;
+    private final boolean isFile;
+    private volatile long length = UNKNOWN;
+    private volatile long lastModified = UNKNOWN;
+    private volatile NaturalSortKey nameKey;
+    private volatile NaturalSortKey extensionKey;
+
+    public FileEntry(File file) {
+        this.file = file;
+        storage = null;
+        path = null;
+        name = file.getName();
+        isDirectory = file.isDirectory();
+        isFile = !isDirectory && file.isFile();
+    }
+
+    public FileEntry(File file, boolean isDirectory, boolean isFile, long length, long lastModified) {
+        this.file = file;
+        storage = null;
+        path = null;
+        name = file.getName();
+        this.isDirectory = isDirectory;
+        this.isFile = isFile;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param length       size of the entry, or {@link CompactListing#UNKNOWN} to ask the provider on first access
+     * @param lastModified modification time, or {@link CompactListing#UNKNOWN} to ask the provider on first access
+     */
+    public FileEntry(StorageProvider storage, String path, String name, boolean isDirectory, boolean isFile,
+                     long length, long lastModified) {
+        file = null;
+        this.storage = storage;
+        this.path = path;
+        this.name = name;
+        this.isDirectory = isDirectory;
+        this.isFile = isFile;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the local file, or null for an entry of a provider
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return file != null ? file.getAbsolutePath() : path;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public boolean isFile() {
+        return isFile;
+    }
+
+    public long length() {
+        long length = this.length;
+        if (length == UNKNOWN) {
+            if (file != null)
+                this.length = length = file.length();
+            else {
+                FileEntry entry = storage.stat(path);
+                this.length = length = entry != null ? entry.length() : 0;
+            }
+        }
+        return length;
+    }
+
+    public long lastModified() {
+        long lastModified = this.lastModified;
+        if (lastModified == UNKNOWN) {
+            if (file != null)
+                this.lastModified = lastModified = file.lastModified();
+            else {
+                FileEntry entry = storage.stat(path);
+                this.lastModified = lastModified = entry != null ? entry.lastModified() : 0;
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * @return size read so far, {@link CompactListing#UNKNOWN} if {@link #length()} was not called yet
+     */
+    long getKnownLength() {
+        return length;
+    }
+
+    /**
+     * @return modification time read so far, {@link CompactListing#UNKNOWN} if {@link #lastModified()} was not called yet
+     */
+    long getKnownLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Natural sort key of the name, built on first use and reused by every later comparison
+     */
+    public NaturalSortKey getNameKey() {
+        NaturalSortKey nameKey = this.nameKey;
+        if (nameKey == null)
+            this.nameKey = nameKey = NaturalSortKey.of(name);
+        return nameKey;
+    }
+
+    /**
+     * Natural sort key of the lower-cased extension, empty for folders and names without one
+     */
+    public NaturalSortKey getExtensionKey() {
+        NaturalSortKey extensionKey = this.extensionKey;
+        if (extensionKey == null) {
+            int dot = name.lastIndexOf('.');
+            this.extensionKey = extensionKey = NaturalSortKey.of(isDirectory || dot <= 0 ? "" : name.substring(dot + 1));
+        }
+        return extensionKey;
+    }
+
+    /**
+     * @return rough number of bytes retained by the entry, its strings and the sort keys built so far
+     */
+    public long estimateSize() {
+        long size = OBJECT_BYTES + NaturalSortKey.estimateSize(name.length());
+        if (file != null)
+            size += FILE_BYTES + NaturalSortKey.estimateSize(file.getPath().length());
+        if (path != null)
+            size += NaturalSortKey.estimateSize(path.length());
+        NaturalSortKey nameKey = this.nameKey;
+        if (nameKey != null)
+            size += nameKey.estimateSize();
+        NaturalSortKey extensionKey = this.extensionKey;
+        if (extensionKey != null)
+            size += extensionKey.estimateSize();
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.isabsent.filepicker.entity;
+
+/**
+ * Open addressing map from row ids to row indices, growing as ids are added. Keeps only two
+ * primitive arrays, so even a listing of a huge folder is indexed without boxing.
+ */
+public class IdIndex {
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public IdIndex(int expectedSize) {
+        int capacity = 4;
+        while (capacity * 3 < expectedSize * 4)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public void put(long id, int index) {
+        if ((size + 1) * 4 > keys.length * 3)
+            grow();
+        int slot = slot(id);
+        while (values[slot] != EMPTY && keys[slot] != id)
+            slot = (slot + 1) & mask;
+        if (values[slot] == EMPTY)
+            size++;
+        keys[slot] = id;
+        values[slot] = index;
+    }
+
+    /**
+     * @return index of the row with the id, or -1 if there is none
+     */
+    public int get(long id) {
+        int slot = slot(id);
+        while (values[slot] != EMPTY) {
+            if (keys[slot] == id)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++)
+            values[i] = EMPTY;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldValues[i] != EMPTY)
+                put(oldKeys[i], oldValues[i]);
+    }
+
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -1,37 +1,209 @@
 package com.github.isabsent.filepicker.entity;
 
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.text.Spannable;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.github.isabsent.filepicker.R;
 import com.github.isabsent.filepicker.SimpleFilePickerDialog;
+import com.github.isabsent.filepicker.listing.MetadataLoader;
+import com.github.isabsent.filepicker.thumbnail.ThumbnailLoader;
 
 import static eltos.simpledialogfragment.list.CustomListDialog.MULTI_CHOICE;
 import static eltos.simpledialogfragment.list.CustomListDialog.SINGLE_CHOICE;
 
+/**
+ * Views of a row and the values last shown in them, so that binding a row again only touches
+ * what changed. The optional second line with size and date and the thumbnail are set apart
+ * from the rest, as they may arrive later.
+ */
 public class ItemViewHolder {
+    private static final int UNKNOWN = -1;
+
     private View itemView;
     private TextView textView;
+    private TextView detailsView;
     private ImageView imageView;
+    private int position;
+    private int iconResId = UNKNOWN;
+    private int backgroundColor = UNKNOWN;
+    private BackgroundColorSpan highlightSpan;
+    private int highlightColor;
+    private long detailsLength = UNKNOWN;
+    private long detailsModified = UNKNOWN;
+    private MetadataLoader.Request detailsRequest;
+    private Bitmap thumbnail;
+    private ColorStateList iconTint;
+    private ThumbnailLoader.Request thumbnailRequest;
+    private CompactListing thumbnailListing;
+    private long thumbnailId;
+    private long thumbnailModified;
 
     public ItemViewHolder(View itemView) {
         this.itemView = itemView;
         textView = (TextView) itemView.findViewById(R.id.text1);
         imageView = (ImageView) itemView.findViewById(R.id.icon);
+        detailsView = (TextView) itemView.findViewById(R.id.text2);
+    }
+
+    /**
+     * @return adapter position of the row last bound to the views
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gives the icon a fixed square size, so rows with and without thumbnail are equally high
+     */
+    public void setIconSize(int size) {
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        params.width = size;
+        params.height = size;
+        imageView.setLayoutParams(params);
+        imageView.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
+    }
+
+    public ThumbnailLoader.Request getThumbnailRequest() {
+        return thumbnailRequest;
+    }
+
+    /**
+     * Remembers the pending thumbnail request of the row, cancelling the one for another row
+     */
+    public void setThumbnailRequest(ThumbnailLoader.Request request) {
+        if (thumbnailRequest != null && thumbnailRequest != request)
+            thumbnailRequest.cancel();
+        thumbnailRequest = request;
+    }
+
+    /**
+     * @return true if the thumbnail shown or being loaded is the one of this row
+     */
+    public boolean hasThumbnailOf(CompactListing listing, long id, long lastModified) {
+        return listing == thumbnailListing && id == thumbnailId && lastModified == thumbnailModified;
+    }
+
+    /**
+     * Remembers the row the thumbnail shown or being loaded belongs to, null for none
+     */
+    public void setThumbnailOf(CompactListing listing, long id, long lastModified) {
+        thumbnailListing = listing;
+        thumbnailId = id;
+        thumbnailModified = lastModified;
     }
 
-    public void bind(Item item, SimpleFilePickerDialog.CompositeMode mode, boolean isItemChecked, Spannable text) {
-        textView.setText(text);
-        imageView.setImageResource(item.isFile() ? R.mipmap.ic_insert_drive_file_black_24dp : R.mipmap.ic_folder_black_24dp);
+    /**
+     * Shows a thumbnail instead of the type icon, or with null, the type icon again
+     */
+    public void setThumbnail(Bitmap thumbnail) {
+        if (thumbnail == this.thumbnail)
+            return;
+        if (thumbnail != null)
+            imageView.setImageBitmap(thumbnail);
+        if ((thumbnail == null) != (this.thumbnail == null))
+            setIconTinted(thumbnail == null);
+        this.thumbnail = thumbnail;
+        iconResId = UNKNOWN;
+    }
+
+    /**
+     * The item theme tints the type icons, thumbnails are shown in their own colors
+     */
+    private void setIconTinted(boolean tinted) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            if (tinted)
+                imageView.setImageTintList(iconTint);
+            else {
+                iconTint = imageView.getImageTintList();
+                imageView.setImageTintList(null);
+            }
+        } else if (tinted)
+            imageView.setColorFilter(itemView.getResources().getColor(R.color.colorPrimary), PorterDuff.Mode.SRC_ATOP);
+        else
+            imageView.clearColorFilter();
+    }
+
+    /**
+     * @return request reading the details of the row, null if none is pending
+     */
+    public MetadataLoader.Request getDetailsRequest() {
+        return detailsRequest;
+    }
+
+    /**
+     * Remembers the pending request for the details of the row, cancelling the one for another row
+     */
+    public void setDetailsRequest(MetadataLoader.Request request) {
+        if (detailsRequest != null && detailsRequest != request)
+            detailsRequest.cancel();
+        detailsRequest = request;
+    }
+
+    /**
+     * @return true if the second line already shows these values
+     */
+    public boolean showsDetails(long length, long lastModified) {
+        return detailsView != null && detailsView.getVisibility() == View.VISIBLE
+                && length == detailsLength && lastModified == detailsModified;
+    }
+
+    /**
+     * Shows the second line, empty text keeps its place while the values are read
+     */
+    public void bindDetails(CharSequence details, long length, long lastModified) {
+        if (detailsView == null)
+            return;
+        detailsView.setText(details);
+        if (detailsView.getVisibility() != View.VISIBLE)
+            detailsView.setVisibility(View.VISIBLE);
+        detailsLength = length;
+        detailsModified = lastModified;
+    }
+
+    /**
+     * @param highlightOffset start of the highlighted part of the label, or -1 for no highlight
+     */
+    public void bind(int position, boolean isFile, SimpleFilePickerDialog.CompositeMode mode, boolean isItemChecked,
+                     String label, int highlightOffset, int highlightLength, int highlightColor) {
+        this.position = position;
+        if (highlightOffset < 0 || highlightOffset + highlightLength > label.length())
+            textView.setText(label);
+        else {
+            if (highlightSpan == null || this.highlightColor != highlightColor) {
+                highlightSpan = new BackgroundColorSpan(highlightColor);
+                this.highlightColor = highlightColor;
+            }
+            SpannableString text = new SpannableString(label);
+            text.setSpan(highlightSpan, highlightOffset, highlightOffset + highlightLength, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            textView.setText(text);
+        }
+
+        int iconResId = isFile ? R.mipmap.ic_insert_drive_file_black_24dp : R.mipmap.ic_folder_black_24dp;
+        if (thumbnail == null && iconResId != this.iconResId) {
+            imageView.setImageResource(iconResId);
+            this.iconResId = iconResId;
+        }
 
         int choiceMode = mode.getChoiceMode();
         if (choiceMode == SINGLE_CHOICE || choiceMode == MULTI_CHOICE)
             ((Checkable) textView).setChecked(isItemChecked);
-        else if (!SimpleFilePickerDialog.CompositeMode.isImmediate(mode))
-            itemView.setBackgroundColor(isItemChecked ? Color.LTGRAY : Color.TRANSPARENT);
+        else if (!SimpleFilePickerDialog.CompositeMode.isImmediate(mode)) {
+            int backgroundColor = isItemChecked ? Color.LTGRAY : Color.TRANSPARENT;
+            if (backgroundColor != this.backgroundColor) {
+                itemView.setBackgroundColor(backgroundColor);
+                this.backgroundColor = backgroundColor;
+            }
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.github.isabsent.filepicker.entity;
+
+import android.os.Parcel;
+
+/**
+ * A row handle of a {@link CompactListing}: holds only the row index and reads the label and
+ * type from the listing when a row is bound or filtered
+ */
+public class ListingItem extends Item {
+    private final CompactListing listing;
+    private final int index;
+
+    public ListingItem(CompactListing listing, int index) {
+        super(null, false);
+        this.listing = listing;
+        this.index = index;
+    }
+
+    public CompactListing getListing() {
+        return listing;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return listing.getId(index);
+    }
+
+    @Override
+    public String getLabel() {
+        return listing.getName(index);
+    }
+
+    @Override
+    public boolean isFile() {
+        return listing.isFile(index);
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(getLabel());
+        dest.writeByte(isFile() ? (byte) 1 : (byte) 0);
+    }
+}
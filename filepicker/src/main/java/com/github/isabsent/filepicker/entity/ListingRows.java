@@ -0,0 +1,320 @@
+package com.github.isabsent.filepicker.entity;
+
+import android.support.v4.util.Pair;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Rows of a {@link CompactListing} in the list form {@link eltos.simpledialogfragment.list.AdvancedAdapter}
+ * takes. The {@link Pair} of a {@link ListingItem} and its boxed id is created when a row is read,
+ * and only the pairs of the most recently read rows are kept in a small window cache, so the
+ * rows of a folder cost one <code>long</code> each instead of three objects.
+ * <p>
+ * Ids are copied when rows are added, so the rows keep the ids they were shown with while the
+ * listing is changed in place. The list is read-only.
+ */
+public class ListingRows extends ArrayList<Pair<Item, Long>> {
+    private static final long serialVersionUID = 1L;
+    private static final int WINDOW_SIZE = 256;//Power of two, see CompactListing
+
+    private final CompactListing listing;
+    private final int[] indices;//Rows of the listing in order, null for the first size rows
+    private volatile long[] ids;
+    private volatile int size;
+
+    private final int[] windowPositions = new int[WINDOW_SIZE];
+    @SuppressWarnings("unchecked")//Only holds rows of this list
+    private final Pair<Item, Long>[] windowRows = (Pair<Item, Long>[]) new Pair<?, ?>[WINDOW_SIZE];
+
+    /**
+     * All rows of the listing, see {@link #update()}
+     */
+    public ListingRows(CompactListing listing) {
+        this(listing, null, 0);
+        update();
+    }
+
+    /**
+     * Some rows of the listing
+     *
+     * @param indices rows of the listing in the order they are shown
+     * @param count   number of leading indices used
+     */
+    public ListingRows(CompactListing listing, int[] indices, int count) {
+        super(0);
+        this.listing = listing;
+        this.indices = indices;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = listing.getId(indices[i]);
+        this.ids = ids;
+        size = count;
+        for (int i = 0; i < WINDOW_SIZE; i++)
+            windowPositions[i] = -1;
+    }
+
+    public CompactListing getListing() {
+        return listing;
+    }
+
+    /**
+     * Takes in the rows added to the listing since, for a listing of all rows filled in background
+     */
+    public void update() {
+        if (indices != null)
+            return;
+        int oldSize = size;
+        int newSize = listing.size();
+        long[] ids = this.ids;
+        if (newSize > ids.length) {
+            long[] grown = new long[Math.max(newSize, ids.length * 2)];
+            System.arraycopy(ids, 0, grown, 0, oldSize);
+            ids = grown;
+        }
+        for (int i = oldSize; i < newSize; i++)
+            ids[i] = listing.getId(i);
+        this.ids = ids;
+        size = newSize;
+    }
+
+    /**
+     * @return row of the listing shown at the position
+     */
+    public int getIndex(int position) {
+        return indices == null ? position : indices[position];
+    }
+
+    public long getId(int position) {
+        return ids[position];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized Pair<Item, Long> get(int position) {
+        checkPosition(position);
+        int slot = position & (WINDOW_SIZE - 1);
+        if (windowPositions[slot] != position) {
+            windowRows[slot] = createRow(position);
+            windowPositions[slot] = position;
+        }
+        return windowRows[slot];
+    }
+
+    /**
+     * Creates a row without touching the window, for passes over all rows
+     */
+    private Pair<Item, Long> createRow(int position) {
+        return new Pair<Item, Long>(new ListingItem(listing, getIndex(position)), ids[position]);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+    }
+
+    @Override
+    public Iterator<Pair<Item, Long>> iterator() {
+        return new RowIterator(0);
+    }
+
+    @Override
+    public ListIterator<Pair<Item, Long>> listIterator() {
+        return new RowIterator(0);
+    }
+
+    @Override
+    public ListIterator<Pair<Item, Long>> listIterator(int position) {
+        if (position < 0 || position > size)
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        return new RowIterator(position);
+    }
+
+    @Override
+    public Object[] toArray() {
+        int count = size;
+        Object[] rows = new Object[count];
+        for (int i = 0; i < count; i++)
+            rows[i] = createRow(i);
+        return rows;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        int count = size;
+        if (array.length < count)
+            array = (T[]) Array.newInstance(array.getClass().getComponentType(), count);
+        for (int i = 0; i < count; i++)
+            array[i] = (T) createRow(i);
+        if (array.length > count)
+            array[count] = null;
+        return array;
+    }
+
+    /**
+     * Rows are matched by id, the only part of a pair that identifies the row
+     */
+    @Override
+    public int indexOf(Object object) {
+        if (object instanceof Pair && ((Pair<?, ?>) object).second instanceof Long) {
+            long id = (Long) ((Pair<?, ?>) object).second;
+            for (int i = 0; i < size; i++)
+                if (ids[i] == id)
+                    return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object object) {
+        return indexOf(object);//Ids are unique
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) >= 0;
+    }
+
+    @Override
+    public List<Pair<Item, Long>> subList(int fromIndex, int toIndex) {
+        return new ArrayList<>(this).subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Object clone() {
+        return new ArrayList<>(this);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return this == object;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean add(Pair<Item, Long> row) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(int position, Pair<Item, Long> row) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Pair<Item, Long>> rows) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(int position, Collection<? extends Pair<Item, Long>> rows) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Pair<Item, Long> set(int position, Pair<Item, Long> row) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Pair<Item, Long> remove(int position) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> rows) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> rows) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    private class RowIterator implements ListIterator<Pair<Item, Long>> {
+        private final int count = size;
+        private int cursor;
+
+        RowIterator(int position) {
+            cursor = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < count;
+        }
+
+        @Override
+        public Pair<Item, Long> next() {
+            if (cursor >= count)
+                throw new NoSuchElementException();
+            return createRow(cursor++);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @Override
+        public Pair<Item, Long> previous() {
+            if (cursor <= 0)
+                throw new NoSuchElementException();
+            return createRow(--cursor);
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(Pair<Item, Long> row) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(Pair<Item, Long> row) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
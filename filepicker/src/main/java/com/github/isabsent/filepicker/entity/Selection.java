@@ -0,0 +1,51 @@
+package com.github.isabsent.filepicker.entity;
+
+/**
+ * Running counts of the checked rows, updated in constant time whenever a row is checked or
+ * unchecked. The ids of checked folders are combined with xor, which leaves the id of the checked
+ * folder whenever exactly one is checked.
+ */
+public class Selection {
+    private int fileCount;
+    private int folderCount;
+    private long folderIds;
+
+    /**
+     * @param isFile  false for folders and for entries of unknown type
+     * @param checked the new state of the row
+     */
+    public void setChecked(long id, boolean isFile, boolean checked) {
+        int change = checked ? 1 : -1;
+        if (isFile)
+            fileCount += change;
+        else {
+            folderCount += change;
+            folderIds ^= id;
+        }
+    }
+
+    public void clear() {
+        fileCount = 0;
+        folderCount = 0;
+        folderIds = 0;
+    }
+
+    public int getCount() {
+        return fileCount + folderCount;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public int getFolderCount() {
+        return folderCount;
+    }
+
+    /**
+     * @return id of the checked folder, only meaningful while {@link #getFolderCount()} is 1
+     */
+    public long getSingleFolderId() {
+        return folderIds;
+    }
+}
@@ -4,6 +4,10 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.widget.ListView;
 
+/**
+ * @deprecated the dialog keeps its rows in a {@link CompactListing} and no longer creates these
+ */
+@Deprecated
 public class SimpleFilePickerItem implements Parcelable {
     private long id;
     private Item item;
@@ -0,0 +1,35 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Build;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.io.File;
+
+/**
+ * Reads the entries of a folder into {@link FileEntry} snapshots. The implementation is chosen
+ * by {@link #getInstance()}: {@link NioEnumerator} on API 26+, which reads type, size and
+ * modification time with one call per entry, {@link FileEnumerator} on older devices.
+ */
+public abstract class DirectoryEnumerator {
+    private static DirectoryEnumerator sInstance;
+
+    public interface Visitor {
+        /**
+         * @return false to stop the enumeration
+         */
+        boolean visit(FileEntry entry);
+    }
+
+    public static synchronized DirectoryEnumerator getInstance() {
+        if (sInstance == null)
+            sInstance = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? new NioEnumerator() : new FileEnumerator();
+        return sInstance;
+    }
+
+    /**
+     * Calls the visitor for every entry of the folder, in file system order. Nothing is visited
+     * if the folder cannot be read.
+     */
+    public abstract void enumerate(File folder, Visitor visitor);
+}
@@ -0,0 +1,316 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.isabsent.filepicker.comparator.SortKey;
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.metrics.FolderMetrics;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Lists a folder of a {@link StorageProvider} either synchronously ({@link #load}) or on a background thread,
+ * delivering unsorted entries in batches and the final listing, sorted by a {@link SortKey}, at the end.
+ * Results are {@link CompactListing}s, so no per-entry objects are kept once a folder is listed.
+ * Entries sorted by name are kept in the {@link ListingCache} and reused while the folder is unchanged.
+ */
+public class DirectoryLoader {
+    private static final int BATCH_SIZE = 256;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FilePickerLoader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the next chunk of entries, in file system order
+         */
+        void onBatchLoaded(CompactListing batch);
+
+        /**
+         * Called on the main thread once with the complete, sorted listing
+         */
+        void onLoadFinished(Result result);
+    }
+
+    public static class Result {
+        public final CompactListing listing;
+        public final SortKey sortKey;
+        public final boolean ascending;
+        private final Comparator<FileEntry> comparator;
+
+        public Result(CompactListing listing, SortKey sortKey, boolean ascending) {
+            this.listing = listing;
+            this.sortKey = sortKey;
+            this.ascending = ascending;
+            comparator = sortKey.comparator(ascending);
+        }
+
+        /**
+         * Updates the listing in place: removed and re-created names are dropped in one pass,
+         * added entries are inserted at their sorted position without sorting the listing again
+         *
+         * @param added entries stat'ed in background, see {@link FolderWatcher}
+         * @return true if the listing changed
+         */
+        public boolean applyChanges(StorageProvider storage, Collection<FileEntry> added, Collection<String> removed,
+                                    boolean foldersOnly) {
+            Set<String> dropped = new HashSet<>(removed);
+            for (FileEntry entry : added)
+                dropped.add(entry.getName());
+            boolean changed = listing.removeAll(dropped) > 0;
+
+            for (FileEntry entry : added) {
+                if (foldersOnly && !entry.isDirectory())
+                    continue;
+                int index = insertionIndex(storage, entry);
+                listing.insert(index, entry);
+                changed = true;
+            }
+            return changed;
+        }
+
+        private int insertionIndex(StorageProvider storage, FileEntry entry) {
+            int low = 0;
+            int high = listing.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(listing.getEntry(storage, middle), entry) <= 0)
+                    low = middle + 1;
+                else
+                    high = middle - 1;
+            }
+            return low;
+        }
+    }
+
+    private final StorageProvider storage;
+    private final String folderPath;
+    private final boolean foldersOnly;
+    private final SortKey sortKey;
+    private final boolean ascending;
+    private final FolderMetrics metrics;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled;
+    private Future<?> future;
+
+    /**
+     * @param metrics timings to fill in, or null
+     */
+    public DirectoryLoader(StorageProvider storage, String folderPath, boolean foldersOnly, SortKey sortKey,
+                           boolean ascending, FolderMetrics metrics, Callback callback) {
+        this.storage = storage;
+        this.folderPath = folderPath;
+        this.foldersOnly = foldersOnly;
+        this.sortKey = sortKey;
+        this.ascending = ascending;
+        this.metrics = metrics;
+        this.callback = callback;
+    }
+
+    public void start() {
+        future = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<FileEntry> entries = ListingCache.getInstance().get(storage, folderPath);
+                FolderMetrics.setEntryCount(metrics, entries == null ? 0 : entries.size(), entries != null);
+                if (entries == null) {
+                    FolderMetrics.begin(metrics, FolderMetrics.ENUMERATE);
+                    long folderModified = storage.lastModified(folderPath);
+                    BatchVisitor visitor = new BatchVisitor();
+                    storage.list(folderPath, visitor);
+                    if (visitor.batch.size() > 0)
+                        postBatch(visitor.batch);
+                    entries = visitor.entries;
+                    FolderMetrics.end(metrics, FolderMetrics.ENUMERATE);
+                    FolderMetrics.setEntryCount(metrics, entries.size(), false);
+
+                    if (cancelled)
+                        return;
+                    try {
+                        sort(storage, folderPath, folderModified, entries, metrics);
+                    } catch (CancellationException e) {
+                        return;
+                    }
+                }
+                final Result result;
+                try {
+                    result = toResult(folderPath, entries, foldersOnly, sortKey, ascending, metrics);
+                } catch (CancellationException e) {
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled)
+                            callback.onLoadFinished(result);
+                    }
+                });
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled = true;
+        if (future != null)
+            future.cancel(true);
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private class BatchVisitor implements StorageProvider.BatchVisitor {
+        final List<FileEntry> entries = new ArrayList<>();
+        CompactListing batch = new CompactListing(folderPath, BATCH_SIZE);
+
+        @Override
+        public boolean visit(List<FileEntry> provided) {
+            for (FileEntry entry : provided) {
+                if (cancelled)
+                    return false;
+                entries.add(entry);
+                if (!foldersOnly || entry.isDirectory()) {
+                    batch.add(entry);
+                    if (batch.size() == BATCH_SIZE) {
+                        postBatch(batch);
+                        batch = new CompactListing(folderPath, BATCH_SIZE);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private void postBatch(final CompactListing batch) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled)
+                    callback.onBatchLoaded(batch);
+            }
+        });
+    }
+
+    /**
+     * Lists, sorts and wraps the content of a folder on the calling thread
+     */
+    public static Result load(StorageProvider storage, String folderPath, boolean foldersOnly, SortKey sortKey,
+                              boolean ascending, FolderMetrics metrics) {
+        return toResult(folderPath, listSorted(storage, folderPath, metrics), foldersOnly, sortKey, ascending, metrics);
+    }
+
+    /**
+     * Returns all entries of a folder sorted by name, from the cache if the folder is unchanged.
+     * The returned list is shared and must not be modified.
+     *
+     * @throws CancellationException if the calling thread is interrupted, nothing is cached then
+     */
+    public static List<FileEntry> listSorted(StorageProvider storage, String folderPath) {
+        return listSorted(storage, folderPath, null);
+    }
+
+    private static List<FileEntry> listSorted(StorageProvider storage, String folderPath, FolderMetrics metrics) {
+        List<FileEntry> entries = ListingCache.getInstance().get(storage, folderPath);
+        FolderMetrics.setEntryCount(metrics, entries == null ? 0 : entries.size(), entries != null);
+        if (entries == null) {
+            FolderMetrics.begin(metrics, FolderMetrics.ENUMERATE);
+            long folderModified = storage.lastModified(folderPath);
+            entries = listEntries(storage, folderPath);
+            FolderMetrics.end(metrics, FolderMetrics.ENUMERATE);
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException();//The listing may have stopped short
+            FolderMetrics.setEntryCount(metrics, entries.size(), false);
+            sort(storage, folderPath, folderModified, entries, metrics);
+        }
+        return entries;
+    }
+
+    /**
+     * Snapshots every entry of a folder, in batches as the provider delivers them
+     */
+    public static List<FileEntry> listEntries(StorageProvider storage, String folderPath) {
+        final List<FileEntry> entries = new ArrayList<>();
+        storage.list(folderPath, new StorageProvider.BatchVisitor() {
+            @Override
+            public boolean visit(List<FileEntry> batch) {
+                entries.addAll(batch);
+                return true;
+            }
+        });
+        return entries;
+    }
+
+    private static void sort(StorageProvider storage, String folderPath, long folderModified, List<FileEntry> entries,
+                             FolderMetrics metrics) {
+        FolderMetrics.begin(metrics, FolderMetrics.SORT);
+        try {
+            ListingSorter.sort(entries, SortKey.NAME, true);
+        } finally {
+            FolderMetrics.end(metrics, FolderMetrics.SORT);//Closes the trace section when cancelled too
+        }
+        ListingCache.getInstance().put(storage, folderPath, folderModified, entries);
+    }
+
+    /**
+     * @param entries all entries sorted by name, other orders are sorted from a copy
+     */
+    private static Result toResult(String folderPath, List<FileEntry> entries, boolean foldersOnly, SortKey sortKey,
+                                   boolean ascending, FolderMetrics metrics) {
+        if (foldersOnly || sortKey != SortKey.NAME || !ascending) {
+            FolderMetrics.begin(metrics, FolderMetrics.FILTER);
+            List<FileEntry> shown = new ArrayList<>(entries.size());
+            for (FileEntry entry : entries)
+                if (!foldersOnly || entry.isDirectory())
+                    shown.add(entry);
+            FolderMetrics.end(metrics, FolderMetrics.FILTER);
+            if (sortKey != SortKey.NAME || !ascending) {
+                FolderMetrics.begin(metrics, FolderMetrics.SORT);
+                try {
+                    ListingSorter.sort(shown, sortKey, ascending);
+                } finally {
+                    FolderMetrics.end(metrics, FolderMetrics.SORT);
+                }
+            }
+            entries = shown;
+        }
+        FolderMetrics.begin(metrics, FolderMetrics.BUILD);
+        CompactListing listing = new CompactListing(folderPath, entries.size());
+        try {
+            for (FileEntry entry : entries)
+                listing.add(entry);
+            listing.trimToSize();
+        } finally {
+            FolderMetrics.end(metrics, FolderMetrics.BUILD);
+        }
+        FolderMetrics.setShownCount(metrics, listing.size());
+        return new Result(listing, sortKey, ascending);
+    }
+}
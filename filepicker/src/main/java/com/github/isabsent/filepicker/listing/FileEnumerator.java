@@ -0,0 +1,21 @@
+package com.github.isabsent.filepicker.listing;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.io.File;
+
+/**
+ * Enumerates with {@link File#list()} and a type lookup per entry, available on every API level
+ */
+public class FileEnumerator extends DirectoryEnumerator {
+
+    @Override
+    public void enumerate(File folder, Visitor visitor) {
+        String[] names = folder.list();
+        if (names == null)
+            return;
+        for (String name : names)
+            if (!visitor.visit(new FileEntry(new File(folder, name))))
+                return;
+    }
+}
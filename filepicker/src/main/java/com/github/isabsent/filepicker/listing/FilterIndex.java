@@ -0,0 +1,295 @@
+package com.github.isabsent.filepicker.listing;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Lower-cased copy of the names of a listing with all word starts sorted by the text that follows
+ * them, so that a query is looked up with two binary searches instead of testing every name.
+ * A query extending the previous one is only matched against the rows of the previous result.
+ * <p>
+ * A name matches if the query occurs at the start of one of its words. Words begin at the start of
+ * the name and after every character that is not a letter or digit, so <code>"2017"</code> matches
+ * <code>"log_2017-05.txt"</code>.
+ */
+public class FilterIndex {
+    private static final char SEPARATOR = 0;//Ends every name in the pool and sorts before any other char
+
+    private final CompactListing listing;
+    private final int modCount;
+    private final char[] pool;
+    private final int[] rowStarts;
+    private final int[] wordStarts;
+
+    /**
+     * Rows matching a query, in listing order, with the position of the first match in each name
+     */
+    public static class Match {
+        private final FilterIndex index;
+        private final String query;
+        private final BitSet rows = new BitSet();
+        private final int[] matchedRows;
+        private final int[] offsets;
+
+        private Match(FilterIndex index, String query, int[] matchedRows, int[] offsets) {
+            this.index = index;
+            this.query = query;
+            this.matchedRows = matchedRows;
+            this.offsets = offsets;
+            for (int row : matchedRows)
+                rows.set(row);
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public int size() {
+            return matchedRows.length;
+        }
+
+        /**
+         * @return matching rows in listing order, not to be modified
+         */
+        public int[] getRows() {
+            return matchedRows;
+        }
+
+        public boolean contains(int row) {
+            return rows.get(row);
+        }
+
+        /**
+         * @return position of the match in the name of the row, or -1 if the row does not match
+         */
+        public int getOffset(int row) {
+            return rows.get(row) ? offsets[Arrays.binarySearch(matchedRows, row)] : -1;
+        }
+
+        public int getLength() {
+            return query.length();
+        }
+
+        /**
+         * @return true if the rows of the match are still the rows of the listing
+         */
+        public boolean isCurrent(CompactListing listing) {
+            return index.isCurrent(listing);
+        }
+    }
+
+    /**
+     * Builds the index on the calling thread. The listing is locked meanwhile, so it should not be
+     * called on the main thread.
+     */
+    public FilterIndex(CompactListing listing) {
+        this.listing = listing;
+        synchronized (listing) {
+            modCount = listing.getModCount();
+            int size = listing.size();
+            rowStarts = new int[size + 1];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                rowStarts[i] = length;
+                length += listing.getNameLength(i) + 1;
+            }
+            rowStarts[size] = length;
+
+            pool = new char[length];
+            int wordCount = 0;
+            for (int i = 0; i < size; i++) {
+                int start = rowStarts[i];
+                int end = rowStarts[i + 1] - 1;
+                listing.getNameChars(i, pool, start);
+                for (int j = start; j < end; j++)
+                    pool[j] = Character.toLowerCase(pool[j]);
+                pool[end] = SEPARATOR;
+                for (int j = start; j < end; j++)
+                    if (isWordStart(j, start))
+                        wordCount++;
+            }
+
+            wordStarts = new int[wordCount];
+            int word = 0;
+            for (int i = 0; i < size; i++)
+                for (int j = rowStarts[i]; j < rowStarts[i + 1] - 1; j++)
+                    if (isWordStart(j, rowStarts[i]))
+                        wordStarts[word++] = j;
+        }
+        sortWordStarts();
+    }
+
+    /**
+     * Lower-cases a query the same way the names are, char by char, so match offsets in the
+     * lower-cased name are valid in the original name
+     */
+    public static String normalize(CharSequence query) {
+        char[] chars = new char[query.length()];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(query.charAt(i));
+        return new String(chars);
+    }
+
+    /**
+     * Matches a single name the way the index does, without building one
+     *
+     * @param query normalized query
+     * @return offset of the first word of the name starting with the query, or -1
+     */
+    public static int find(String name, String query) {
+        int last = name.length() - query.length();
+        for (int position = 0; position <= last; position++) {
+            if (position > 0 && Character.isLetterOrDigit(Character.toLowerCase(name.charAt(position - 1))))
+                continue;
+            int i = 0;
+            while (i < query.length() && Character.toLowerCase(name.charAt(position + i)) == query.charAt(i))
+                i++;
+            if (i == query.length())
+                return position;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the index was built from this listing and the listing did not change since
+     */
+    public boolean isCurrent(CompactListing listing) {
+        return this.listing == listing && listing.getModCount() == modCount;
+    }
+
+    /**
+     * @param query    normalized query, not empty
+     * @param previous result of an earlier search, narrowed instead of searching the whole
+     *                 index if the query extends its query
+     */
+    public Match search(String query, Match previous) {
+        if (previous != null && previous.index == this && query.startsWith(previous.query))
+            return narrow(query, previous);
+
+        int from = lowerBound(query, false);
+        int to = lowerBound(query, true);
+        long[] matches = new long[to - from];
+        for (int i = from; i < to; i++) {
+            int position = wordStarts[i];
+            int row = rowOf(position);
+            matches[i - from] = (long) row << 32 | (position - rowStarts[row]);
+        }
+        Arrays.sort(matches);//By row, then by offset
+
+        int count = 0;
+        for (int i = 0; i < matches.length; i++)
+            if (i == 0 || matches[i] >>> 32 != matches[i - 1] >>> 32)
+                matches[count++] = matches[i];
+        int[] rows = new int[count];
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) (matches[i] >>> 32);
+            offsets[i] = (int) matches[i];
+        }
+        return new Match(this, query, rows, offsets);
+    }
+
+    private Match narrow(String query, Match previous) {
+        int[] rows = new int[previous.matchedRows.length];
+        int[] offsets = new int[rows.length];
+        int count = 0;
+        for (int i = 0; i < previous.matchedRows.length; i++) {
+            int row = previous.matchedRows[i];
+            int offset = find(row, query, previous.offsets[i]);
+            if (offset >= 0) {
+                rows[count] = row;
+                offsets[count] = offset;
+                count++;
+            }
+        }
+        return new Match(this, query, Arrays.copyOf(rows, count), Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * @return offset of the first word of the row starting with the query, not before the given offset
+     */
+    private int find(int row, String query, int fromOffset) {
+        int start = rowStarts[row];
+        int last = rowStarts[row + 1] - 1 - query.length();
+        for (int position = start + fromOffset; position <= last; position++)
+            if (isWordStart(position, start) && compareWithQuery(position, query) == 0)
+                return position - start;
+        return -1;
+    }
+
+    private boolean isWordStart(int position, int rowStart) {
+        return position == rowStart || !Character.isLetterOrDigit(pool[position - 1]);
+    }
+
+    private int rowOf(int position) {
+        int row = Arrays.binarySearch(rowStarts, position);
+        return row >= 0 ? row : -row - 2;
+    }
+
+    /**
+     * @return index of the first word start whose text is not less than the query, or with
+     * <code>after</code> set, the first one whose text does not start with the query and sorts after it
+     */
+    private int lowerBound(String query, boolean after) {
+        int low = 0;
+        int high = wordStarts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = compareWithQuery(wordStarts[middle], query);
+            if (result < 0 || after && result == 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Compares the text at a pool position with the query, 0 if the text starts with the query
+     */
+    private int compareWithQuery(int position, String query) {
+        for (int i = 0; i < query.length(); i++) {
+            char c = pool[position + i];
+            char q = query.charAt(i);
+            if (c != q)
+                return c - q;//Stops at the separator, so never reads past the name
+        }
+        return 0;
+    }
+
+    private int compareWords(int a, int b) {
+        while (true) {
+            char c = pool[a++];
+            char d = pool[b++];
+            if (c != d)
+                return c - d;
+            if (c == SEPARATOR)
+                return 0;
+        }
+    }
+
+    /**
+     * Bottom-up merge sort of the word starts by the text following them
+     */
+    private void sortWordStarts() {
+        int[] source = wordStarts;
+        int[] target = new int[source.length];
+        for (int width = 1; width < source.length; width *= 2) {
+            for (int low = 0; low < source.length; low += 2 * width) {
+                int middle = Math.min(low + width, source.length);
+                int high = Math.min(low + 2 * width, source.length);
+                int i = low;
+                int j = middle;
+                for (int k = low; k < high; k++)
+                    target[k] = i < middle && (j >= high || compareWords(source[i], source[j]) <= 0) ? source[i++] : source[j++];
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != wordStarts)
+            System.arraycopy(source, 0, wordStarts, 0, source.length);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Process;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists subfolders the user is likely to open next into the {@link ListingCache}, on low
+ * priority threads, so that opening one of them does not enumerate and sort on the critical path.
+ */
+public class FolderPrefetcher {
+    private static final int MAX_CONCURRENCY = 2;
+
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENCY, MAX_CONCURRENCY, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                        runnable.run();
+                    }
+                }, "FilePickerPrefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    public enum Mode {
+        /**
+         * Nothing is listed ahead of time
+         */
+        OFF,
+        /**
+         * Subfolders shown on the screen are listed
+         */
+        VISIBLE,
+        /**
+         * All subfolders of the current folder are listed, in display order
+         */
+        ALL
+    }
+
+    private final StorageProvider storage;
+    private final long maxBytes;
+    private final List<Future<?>> pending = new ArrayList<>();
+    private AtomicLong prefetchedBytes = new AtomicLong();
+
+    /**
+     * @param maxBytes limit for the estimated size of listings prefetched for one folder
+     */
+    public FolderPrefetcher(StorageProvider storage, long maxBytes) {
+        this.storage = storage;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Starts listing the given folders, dropping requests that have not started yet.
+     * Folders already in the cache are skipped.
+     */
+    public void prefetch(List<String> folderPaths) {
+        cancelPending();
+        final AtomicLong budget = prefetchedBytes;
+        for (final String folderPath : folderPaths) {
+            if (budget.get() >= maxBytes)
+                return;
+            if (ListingCache.getInstance().contains(storage, folderPath))
+                continue;
+            pending.add(EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (budget.get() >= maxBytes || Thread.currentThread().isInterrupted())
+                        return;
+                    List<FileEntry> entries = DirectoryLoader.listSorted(storage, folderPath);
+                    budget.addAndGet(ListingCache.estimateSize(entries));
+                }
+            }));
+        }
+    }
+
+    /**
+     * Forgets the folders prefetched so far, e.g. after navigating to another folder
+     */
+    public void reset() {
+        cancelPending();
+        prefetchedBytes = new AtomicLong();
+    }
+
+    public void cancel() {
+        cancelPending();
+    }
+
+    private void cancelPending() {
+        for (Future<?> future : pending)
+            future.cancel(false);
+        pending.clear();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Watches a folder with a {@link FileObserver} and reports created, written, deleted and moved
+ * entries on the main thread. Events arriving within {@link #COALESCE_MS} of the first one of a burst
+ * are merged into a single report, so a flood of writes causes one update. Added entries are
+ * stat'ed on a background thread before the report, one burst after the other, so a camera dump
+ * or an unzip does not block the main thread.
+ */
+public class FolderWatcher {
+    private static final long COALESCE_MS = 300;
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FilePickerWatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final int EVENTS = FileObserver.CREATE | FileObserver.CLOSE_WRITE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    public interface Callback {
+        /**
+         * @param added   entries created, moved into the folder or written, stat'ed again with
+         *                their size and modification time read
+         * @param removed names deleted or moved out of the folder, possibly not listed, and names
+         *                added that were gone again when stat'ed
+         */
+        void onFolderChanged(List<FileEntry> added, List<String> removed);
+
+        /**
+         * The watched folder itself was deleted or moved
+         */
+        void onFolderGone();
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final StorageProvider storage;
+    private final Callback callback;
+    private String folderPath;
+    private int generation;//Changed with the watched folder, drops reports of the folder before
+    private final Set<String> added = new LinkedHashSet<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+    private boolean gone;
+    private boolean scheduled;
+    private FileObserver observer;
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            List<String> addedNames;
+            List<String> removedNames;
+            boolean folderGone;
+            synchronized (FolderWatcher.this) {
+                addedNames = new ArrayList<>(added);
+                removedNames = new ArrayList<>(removed);
+                folderGone = gone;
+                added.clear();
+                removed.clear();
+                gone = false;
+                scheduled = false;
+            }
+            if (observer == null)
+                return;
+            if (folderGone)
+                callback.onFolderGone();
+            else if (!addedNames.isEmpty() || !removedNames.isEmpty())
+                statInBackground(folderPath, generation, addedNames, removedNames);
+        }
+    };
+
+    public FolderWatcher(StorageProvider storage, Callback callback) {
+        this.storage = storage;
+        this.callback = callback;
+    }
+
+    public void startWatching(String folderPath) {
+        stopWatching();
+        this.folderPath = folderPath;
+        observer = new FileObserver(folderPath, EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                onFileEvent(event & FileObserver.ALL_EVENTS, path);
+            }
+        };
+        observer.startWatching();
+    }
+
+    public void stopWatching() {
+        generation++;
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+        mainHandler.removeCallbacks(dispatch);
+        synchronized (this) {
+            added.clear();
+            removed.clear();
+            gone = false;
+            scheduled = false;
+        }
+    }
+
+    private void statInBackground(final String folderPath, final int generation, final List<String> addedNames,
+                                  final List<String> removedNames) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<FileEntry> added = new ArrayList<>(addedNames.size());
+                for (String name : addedNames) {
+                    FileEntry entry = storage.stat(storage.getChild(folderPath, name));
+                    if (entry == null)
+                        removedNames.add(name);
+                    else {
+                        entry.length();
+                        entry.lastModified();
+                        added.add(entry);
+                    }
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (observer != null && generation == FolderWatcher.this.generation)
+                            callback.onFolderChanged(added, removedNames);
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized void onFileEvent(int event, String name) {
+        switch (event) {
+            case FileObserver.CREATE:
+            case FileObserver.MOVED_TO:
+            case FileObserver.CLOSE_WRITE://Size and time read at CREATE are outdated once the file is written
+                if (name == null)
+                    return;
+                added.add(name);
+                break;
+            case FileObserver.DELETE:
+            case FileObserver.MOVED_FROM:
+                if (name == null)
+                    return;
+                added.remove(name);
+                removed.add(name);//Even if created in this burst, it may have replaced a listed entry
+                break;
+            case FileObserver.DELETE_SELF:
+            case FileObserver.MOVE_SELF:
+                gone = true;
+                break;
+            default:
+                return;
+        }
+        if (!scheduled) {
+            scheduled = true;
+            mainHandler.postDelayed(dispatch, COALESCE_MS);
+        }
+    }
+}
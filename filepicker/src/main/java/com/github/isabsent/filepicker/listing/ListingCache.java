@@ -0,0 +1,185 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of sorted folder listings, bounded by an estimate of retained bytes.
+ * A listing is served only while the folder's modification time is unchanged, so going back to a
+ * recently visited folder needs a single stat instead of a full enumeration and sort.
+ */
+public class ListingCache implements ComponentCallbacks2 {
+    /**
+     * File systems such as FAT and ext3 store modification times with a one or two second
+     * granularity, so a listing taken within that window after the last change may miss a later
+     * change with the same timestamp. Such listings are not served from the cache.
+     */
+    private static final long MTIME_GRANULARITY_MS = 2000;
+    private static final int LISTING_OVERHEAD_BYTES = 128;
+    private static final int REFERENCE_BYTES = 4;
+
+    private static ListingCache sInstance;
+
+    private final LinkedHashMap<String, Listing> listings = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+    private boolean registered;
+
+    private static class Listing {
+        final StorageProvider storage;
+        final List<FileEntry> entries;
+        final long folderModified;
+        final long listedAt;
+        final long size;
+
+        Listing(StorageProvider storage, List<FileEntry> entries, long folderModified, long listedAt, long size) {
+            this.storage = storage;
+            this.entries = entries;
+            this.folderModified = folderModified;
+            this.listedAt = listedAt;
+            this.size = size;
+        }
+    }
+
+    public static synchronized ListingCache getInstance() {
+        if (sInstance == null)
+            sInstance = new ListingCache(Runtime.getRuntime().maxMemory() / 16);
+        return sInstance;
+    }
+
+    ListingCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Makes the cache shrink on {@link ComponentCallbacks2#onTrimMemory} signals of the application
+     */
+    public synchronized void register(Context context) {
+        if (!registered) {
+            context.getApplicationContext().registerComponentCallbacks(this);
+            registered = true;
+        }
+    }
+
+    /**
+     * Returns the cached entries without holding the cache lock while the folder is stat'ed. The
+     * list is shared between callers and must not be modified; entries are safe to read from any
+     * thread.
+     *
+     * @return sorted entries of the folder, or null if it is not cached or changed since it was listed
+     */
+    public List<FileEntry> get(StorageProvider storage, String folderPath) {
+        Listing listing;
+        synchronized (this) {
+            listing = listings.get(folderPath);
+        }
+        if (listing == null || listing.storage != storage)
+            return null;
+        if (storage.lastModified(folderPath) != listing.folderModified) {
+            synchronized (this) {
+                if (listings.get(folderPath) == listing)//Not replaced by a fresh listing meanwhile
+                    remove(folderPath);
+            }
+            return null;
+        }
+        return listing.entries;
+    }
+
+    /**
+     * @param folderModified modification time of the folder read <b>before</b> it was enumerated
+     */
+    public synchronized void put(StorageProvider storage, String folderPath, long folderModified, List<FileEntry> entries) {
+        long listedAt = System.currentTimeMillis();
+        if (folderModified == 0 || listedAt - folderModified < MTIME_GRANULARITY_MS)
+            return;
+
+        long listingSize = estimateSize(entries);
+        if (listingSize > maxSize)
+            return;
+
+        remove(folderPath);
+        listings.put(folderPath, new Listing(storage, entries, folderModified, listedAt, listingSize));
+        size += listingSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Listings are cached after sorting by name, so the estimate includes the name sort keys with
+     * their token arrays and collation keys
+     *
+     * @return rough number of bytes retained by a listing
+     */
+    public static long estimateSize(List<FileEntry> entries) {
+        long listingSize = LISTING_OVERHEAD_BYTES;
+        for (FileEntry entry : entries)
+            listingSize += REFERENCE_BYTES + entry.estimateSize();
+        return listingSize;
+    }
+
+    public synchronized boolean contains(StorageProvider storage, String folderPath) {
+        Listing listing = listings.get(folderPath);
+        return listing != null && listing.storage == storage;
+    }
+
+    public synchronized void invalidate(String folderPath) {
+        remove(folderPath);
+    }
+
+    public synchronized void clear() {
+        listings.clear();
+        size = 0;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private void remove(String key) {
+        Listing listing = listings.remove(key);
+        if (listing != null)
+            size -= listing.size;
+    }
+
+    private synchronized void trimToSize(long targetSize) {
+        Iterator<Map.Entry<String, Listing>> iterator = listings.entrySet().iterator();
+        while (size > targetSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL)
+            clear();
+        else if (level >= TRIM_MEMORY_RUNNING_MODERATE)
+            trimToSize(size() / 2);
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
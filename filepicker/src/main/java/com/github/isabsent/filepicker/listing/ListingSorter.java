@@ -0,0 +1,236 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.isabsent.filepicker.comparator.SortKey;
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sorts entries by a {@link SortKey}. The values compared are read once per entry before sorting,
+ * and the entries themselves never move: a stable merge sort orders their indices.
+ * <p>
+ * Large listings are split into one chunk per core; the keys of each chunk are read and the chunk
+ * is sorted on a background thread, then the sorted chunks are merged pairwise, also in parallel.
+ * Reading the keys and sorting stop soon after the sorting thread is interrupted.
+ */
+public class ListingSorter {
+    private static final int PARALLEL_THRESHOLD = 10000;
+    private static final int INSERTION_THRESHOLD = 16;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FilePickerSorter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, CPU_COUNT), THREAD_FACTORY);
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the sorted copy, not called if the sort is cancelled
+         */
+        void onSorted(CompactListing sorted);
+    }
+
+    private ListingSorter() {
+    }
+
+    /**
+     * Sorts a list in place
+     *
+     * @throws CancellationException if the calling thread is interrupted, the list is left unchanged
+     */
+    public static void sort(List<FileEntry> entries, SortKey key, boolean ascending) {
+        FileEntry[] array = entries.toArray(new FileEntry[entries.size()]);
+        int[] order = sort(array, key, ascending);
+        ListIterator<FileEntry> iterator = entries.listIterator();
+        for (int index : order) {
+            iterator.next();
+            iterator.set(array[index]);
+        }
+    }
+
+    /**
+     * Sorts the rows of a listing without touching the file system for values the listing already
+     * holds. Sizes and modification times read for the sort are stored in the returned listing.
+     *
+     * @param storage provider the listing was read from, asked for the values the listing does not hold
+     * @return a sorted copy of the listing, rows keep their ids
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static CompactListing sort(StorageProvider storage, CompactListing listing, SortKey key, boolean ascending) {
+        FileEntry[] entries = listing.toEntries(storage);
+        return listing.reorder(sort(entries, key, ascending), entries);
+    }
+
+    /**
+     * Sorts a copy of the listing on a background thread, see {@link #sort(StorageProvider, CompactListing, SortKey, boolean)}
+     *
+     * @return the running sort, cancelled with <code>cancel(true)</code>
+     */
+    public static Future<?> sortInBackground(final StorageProvider storage, final CompactListing listing, final SortKey key,
+                                             final boolean ascending, final Callback callback) {
+        final Future<?>[] task = new Future<?>[1];
+        task[0] = BACKGROUND.submit(new Runnable() {
+            @Override
+            public void run() {
+                final CompactListing sorted;
+                try {
+                    sorted = sort(storage, listing, key, ascending);
+                } catch (CancellationException e) {
+                    return;
+                }
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!task[0].isCancelled())
+                            callback.onSorted(sorted);
+                    }
+                });
+            }
+        });
+        return task[0];
+    }
+
+    /**
+     * @return indices of the entries in sorted order
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static int[] sort(final FileEntry[] entries, final SortKey key, boolean ascending) {
+        final Comparator<FileEntry> comparator = key.comparator(ascending);
+        final int[] order = new int[entries.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        final int[] buffer = new int[order.length];
+
+        int chunkCount = entries.length < PARALLEL_THRESHOLD ? 1 : CPU_COUNT;
+        if (chunkCount <= 1) {
+            prepare(entries, 0, entries.length, key);
+            mergeSort(order, buffer, 0, order.length, entries, comparator);
+            return order;
+        }
+
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++)
+            bounds[i] = (int) ((long) entries.length * i / chunkCount);
+        List<Future<?>> tasks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    prepare(entries, from, to, key);
+                    mergeSort(order, buffer, from, to, entries, comparator);
+                }
+            }));
+        }
+        await(tasks);
+
+        int[] source = order;
+        int[] target = buffer;
+        for (int width = 1; width < chunkCount; width *= 2) {
+            tasks.clear();
+            for (int i = 0; i < chunkCount; i += 2 * width) {
+                final int from = bounds[i];
+                final int middle = bounds[Math.min(i + width, chunkCount)];
+                final int to = bounds[Math.min(i + 2 * width, chunkCount)];
+                final int[] runs = source;
+                final int[] merged = target;
+                tasks.add(EXECUTOR.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(runs, from, middle, to, merged, entries, comparator);
+                    }
+                }));
+            }
+            await(tasks);
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+
+    private static void prepare(FileEntry[] entries, int from, int to, SortKey key) {
+        for (int i = from; i < to; i++) {
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException();
+            key.prepare(entries[i]);
+        }
+    }
+
+    private static void await(List<Future<?>> tasks) {
+        try {
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (InterruptedException e) {
+            for (Future<?> task : tasks)
+                task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Sorts <code>order[from, to)</code>, using the same range of <code>buffer</code> as scratch space
+     */
+    private static void mergeSort(int[] order, int[] buffer, int from, int to, FileEntry[] entries, Comparator<FileEntry> comparator) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException();
+            for (int i = from + 1; i < to; i++) {
+                int index = order[i];
+                int j = i;
+                while (j > from && comparator.compare(entries[order[j - 1]], entries[index]) > 0) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = index;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle, entries, comparator);
+        mergeSort(order, buffer, middle, to, entries, comparator);
+        if (comparator.compare(entries[order[middle - 1]], entries[order[middle]]) <= 0)
+            return;//Already in order
+        System.arraycopy(order, from, buffer, from, to - from);
+        merge(buffer, from, middle, to, order, entries, comparator);
+    }
+
+    private static void merge(int[] source, int from, int middle, int to, int[] target, FileEntry[] entries, Comparator<FileEntry> comparator) {
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++)
+            target[k] = i < middle && (j >= to || comparator.compare(entries[source[i]], entries[source[j]]) <= 0) ? source[i++] : source[j++];
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.isabsent.filepicker.listing;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-process store for the listings shown by open dialogs. Dialogs keep only a handle to their
+ * listing in the fragment arguments, so the dataset is never parceled on fragment transactions or
+ * on save-instance-state, and survives configuration changes as long as the process lives.
+ * After process death the handle resolves to nothing and the listing is built again.
+ */
+public class ListingStore {
+    private static final Map<String, DirectoryLoader.Result> sListings = new HashMap<>();
+
+    private ListingStore() {
+    }
+
+    /**
+     * @return a handle that cannot clash with handles issued before a process restart
+     */
+    public static String newHandle() {
+        return UUID.randomUUID().toString();
+    }
+
+    public static synchronized void put(String handle, DirectoryLoader.Result listing) {
+        sListings.put(handle, listing);
+    }
+
+    public static synchronized DirectoryLoader.Result get(String handle) {
+        return handle != null ? sListings.get(handle) : null;
+    }
+
+    public static synchronized void release(String handle) {
+        sListings.remove(handle);
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads size and modification time of single rows on a background thread, for rows whose
+ * listing does not hold them yet. Values read are stored in the listing, which thereby is the
+ * metadata cache of its folder: a row bound again, or the same rows in another order, are not
+ * read again.
+ * <p>
+ * Requests are served in order; a request cancelled before its turn, because its view was
+ * recycled for another row, costs nothing.
+ */
+public class MetadataLoader {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FilePickerMetadata");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public interface Callback {
+        /**
+         * Called on the main thread once the values are stored in the listing, not called if the
+         * request is cancelled
+         */
+        void onMetadataLoaded(Request request, long length, long lastModified);
+    }
+
+    public class Request implements Runnable {
+        private final CompactListing listing;
+        private final int index;
+        private final Callback callback;
+        private volatile boolean cancelled;
+
+        private Request(CompactListing listing, int index, Callback callback) {
+            this.listing = listing;
+            this.index = index;
+            this.callback = callback;
+        }
+
+        public boolean isFor(CompactListing listing, int index) {
+            return this.listing == listing && this.index == index;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || MetadataLoader.this.cancelled)
+                return;
+            final long id;
+            final String path;
+            synchronized (listing) {
+                if (index >= listing.size())
+                    return;
+                id = listing.getId(index);
+                path = storage.getPath(listing, index);
+            }
+            FileEntry entry = storage.stat(path);
+            final long length = entry != null ? entry.length() : 0;
+            final long lastModified = entry != null ? entry.lastModified() : 0;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled && !MetadataLoader.this.cancelled && listing.setAttributes(index, id, length, lastModified))
+                        callback.onMetadataLoaded(Request.this, length, lastModified);
+                }
+            });
+        }
+    }
+
+    private final StorageProvider storage;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled;
+
+    public MetadataLoader(StorageProvider storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Queues reading the size and modification time of a row
+     */
+    public Request load(CompactListing listing, int index, Callback callback) {
+        Request request = new Request(listing, index, callback);
+        EXECUTOR.execute(request);
+        return request;
+    }
+
+    /**
+     * Drops all requests, the loader is not used afterwards
+     */
+    public void cancel() {
+        cancelled = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Coalesces navigation requests of one dialog so that only the latest target is listed. A request
+ * is listed right away if the previous one came, and its listing finished, long enough ago; a
+ * request following quickly, such as Open, Up, Open tapped in a row, is held until no new request
+ * came for {@link #DEBOUNCE_MS} and replaces the one held before. Folders merely passed through
+ * are then never listed. Used on the main thread only.
+ */
+public class NavigationScheduler {
+    public static final long DEBOUNCE_MS = 150;
+
+    public interface Callback {
+        /**
+         * Called on the main thread when the held request is due, not called if it was
+         * superseded or cancelled
+         */
+        void onNavigationDue(String folderPath);
+    }
+
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long lastActiveAt = -DEBOUNCE_MS;//Last request or finished listing
+    private String pendingPath;
+    private final Runnable due = new Runnable() {
+        @Override
+        public void run() {
+            String folderPath = pendingPath;
+            pendingPath = null;
+            if (folderPath != null)
+                callback.onNavigationDue(folderPath);
+        }
+    };
+
+    public NavigationScheduler(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Replaces the held request, if any, with a new one
+     *
+     * @param busy true if the listing of the previous request was still running
+     * @return true if the caller lists the folder now, false if the request is held and
+     * delivered to the callback later
+     */
+    public boolean request(String folderPath, boolean busy) {
+        long now = SystemClock.uptimeMillis();
+        boolean rapid = busy || now - lastActiveAt < DEBOUNCE_MS;
+        lastActiveAt = now;
+        mainHandler.removeCallbacks(due);
+        if (!rapid) {
+            pendingPath = null;
+            return true;
+        }
+        pendingPath = folderPath;
+        mainHandler.postDelayed(due, DEBOUNCE_MS);
+        return false;
+    }
+
+    /**
+     * Called when the listing of a request finished. The gap to the next request is measured
+     * from here, so a tap landing right after a slow folder was listed still counts as part of the
+     * burst rather than being listed at once.
+     */
+    public void onListingFinished() {
+        lastActiveAt = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return true while a request is held
+     */
+    public boolean isPending() {
+        return pendingPath != null;
+    }
+
+    public void cancel() {
+        mainHandler.removeCallbacks(due);
+        pendingPath = null;
+    }
+}
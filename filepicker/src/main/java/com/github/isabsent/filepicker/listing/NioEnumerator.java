@@ -0,0 +1,53 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Enumerates with {@link Files#newDirectoryStream} and reads type, size and modification time
+ * of an entry with a single {@link Files#readAttributes} call. Symbolic links are followed,
+ * as {@link File#isDirectory()} and {@link File#isFile()} do.
+ */
+@TargetApi(Build.VERSION_CODES.O)
+public class NioEnumerator extends DirectoryEnumerator {
+
+    @Override
+    public void enumerate(File folder, Visitor visitor) {
+        DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(folder.toPath());
+        } catch (IOException | SecurityException e) {
+            return;
+        }
+        try {
+            for (Path path : stream) {
+                File file = new File(folder, path.getFileName().toString());
+                FileEntry entry;
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    entry = new FileEntry(file, attributes.isDirectory(), attributes.isRegularFile(),
+                            attributes.size(), attributes.lastModifiedTime().toMillis());
+                } catch (IOException e) {//A dangling link or an entry removed meanwhile, like File reports it
+                    entry = new FileEntry(file, false, false, 0, 0);
+                }
+                if (!visitor.visit(entry))
+                    return;
+            }
+        } catch (RuntimeException e) {//DirectoryIteratorException
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
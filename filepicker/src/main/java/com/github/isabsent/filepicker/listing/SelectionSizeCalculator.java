@@ -0,0 +1,359 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds up the bytes and files of the checked entries, walking checked folders recursively on a
+ * small pool of background threads, one task per folder. Running totals are delivered to the
+ * main thread while the walks go on. When the selection changes, walks of entries no longer
+ * checked stop at their next batch and walks of entries still checked carry on. The totals are
+ * kept running, so checking or unchecking one row costs the same however many are checked.
+ * <p>
+ * The direct content of every folder walked is cached with the folder's modification time, so a
+ * folder checked again is walked with one stat per subfolder. Like the modification time of a
+ * folder, the cache does not see files that changed size in place.
+ */
+public class SelectionSizeCalculator {
+    private static final int WORKER_COUNT = 3;
+    private static final long UPDATE_DELAY_MS = 150;
+    private static final long MTIME_GRANULARITY_MS = 2000;//See ListingCache
+    private static final int MAX_CACHED_FOLDERS = 10000;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "FilePickerSize");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Direct content of a folder as of its modification time
+     */
+    private static class Folder {
+        final StorageProvider storage;
+        final long folderModified;
+        final long bytes;
+        final int fileCount;
+        final String[] subfolders;
+
+        Folder(StorageProvider storage, long folderModified, long bytes, int fileCount, String[] subfolders) {
+            this.storage = storage;
+            this.folderModified = folderModified;
+            this.bytes = bytes;
+            this.fileCount = fileCount;
+            this.subfolders = subfolders;
+        }
+    }
+
+    private static final Map<String, Folder> sFolders = new LinkedHashMap<String, Folder>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Folder> eldest) {
+            return size() > MAX_CACHED_FOLDERS;
+        }
+    };
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the totals of the current selection, repeatedly while
+         * folders are walked and once more when all walks are complete
+         */
+        void onTotalsUpdated(Totals totals);
+    }
+
+    public static class Totals {
+        public final long bytes;
+        public final long fileCount;
+        public final long folderCount;
+        public final boolean complete;
+
+        Totals(long bytes, long fileCount, long folderCount, boolean complete) {
+            this.bytes = bytes;
+            this.fileCount = fileCount;
+            this.folderCount = folderCount;
+            this.complete = complete;
+        }
+
+        @Override
+        public String toString() {
+            return bytes + " bytes in " + fileCount + " files and " + folderCount + " folders" + (complete ? "" : " so far");
+        }
+    }
+
+    /**
+     * Figures of one checked entry, a single file or the subtree under a folder. The figures are
+     * changed under the lock of the walk, together with the running totals, so a walk that is
+     * cancelled adds nothing after its figures were taken off the totals.
+     */
+    private static class Walk {
+        long bytes;
+        long fileCount;
+        long folderCount;
+        boolean complete;
+        final AtomicInteger pending = new AtomicInteger();
+        final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        volatile boolean cancelled;
+    }
+
+    private final StorageProvider storage;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Walk> walks = new HashMap<>();//Accessed on the main thread only
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong totalFileCount = new AtomicLong();
+    private final AtomicLong totalFolderCount = new AtomicLong();
+    private final AtomicInteger incompleteCount = new AtomicInteger();
+    private final AtomicBoolean updatePosted = new AtomicBoolean();
+    private final Runnable update = new Runnable() {
+        @Override
+        public void run() {
+            updatePosted.set(false);
+            callback.onTotalsUpdated(getTotals());
+        }
+    };
+
+    public SelectionSizeCalculator(StorageProvider storage, Callback callback) {
+        this.storage = storage;
+        this.callback = callback;
+    }
+
+    /**
+     * Sets all checked rows, for when rows were replaced rather than toggled. Called on the main
+     * thread. Sizes of files the listing holds are taken from it, other files are read in background.
+     */
+    public void setSelection(CompactListing listing, Collection<Integer> indices) {
+        Map<String, Integer> selected = new HashMap<>(indices.size() * 2);
+        for (int index : indices)
+            selected.put(storage.getPath(listing, index), index);
+
+        boolean changed = false;
+        for (Iterator<Map.Entry<String, Walk>> iterator = walks.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, Walk> walk = iterator.next();
+            if (!selected.containsKey(walk.getKey())) {
+                stop(walk.getValue());
+                iterator.remove();
+                changed = true;
+            }
+        }
+        for (Map.Entry<String, Integer> entry : selected.entrySet())
+            changed |= start(listing, entry.getValue(), entry.getKey());
+        if (changed)
+            postUpdate(true);
+    }
+
+    /**
+     * Checks or unchecks a single row, called on the main thread when a row is toggled
+     */
+    public void setChecked(CompactListing listing, int index, boolean checked) {
+        String path = storage.getPath(listing, index);
+        boolean changed;
+        if (checked)
+            changed = start(listing, index, path);
+        else {
+            Walk walk = walks.remove(path);
+            changed = walk != null;
+            if (changed)
+                stop(walk);
+        }
+        if (changed)
+            postUpdate(true);
+    }
+
+    /**
+     * @return false if the row is counted already
+     */
+    private boolean start(CompactListing listing, int index, String path) {
+        if (walks.containsKey(path))
+            return false;
+        Walk walk = new Walk();
+        walks.put(path, walk);
+        incompleteCount.incrementAndGet();
+        long length = listing.getLength(index);
+        if (listing.isFile(index) && length != CompactListing.UNKNOWN) {
+            add(walk, length, 1, 0);
+            complete(walk);
+        } else
+            submit(walk, path, listing.isDirectory(index));
+        return true;
+    }
+
+    private void stop(Walk walk) {
+        synchronized (walk) {
+            walk.cancelled = true;
+            totalBytes.addAndGet(-walk.bytes);
+            totalFileCount.addAndGet(-walk.fileCount);
+            totalFolderCount.addAndGet(-walk.folderCount);
+            if (!walk.complete)
+                incompleteCount.decrementAndGet();
+        }
+    }
+
+    private void add(Walk walk, long bytes, long fileCount, long folderCount) {
+        synchronized (walk) {
+            if (walk.cancelled)
+                return;
+            walk.bytes += bytes;
+            walk.fileCount += fileCount;
+            walk.folderCount += folderCount;
+            totalBytes.addAndGet(bytes);
+            totalFileCount.addAndGet(fileCount);
+            totalFolderCount.addAndGet(folderCount);
+        }
+    }
+
+    /**
+     * @return false if the walk was cancelled
+     */
+    private boolean complete(Walk walk) {
+        synchronized (walk) {
+            if (walk.cancelled || walk.complete)
+                return false;
+            walk.complete = true;
+            incompleteCount.decrementAndGet();
+            return true;
+        }
+    }
+
+    public Totals getTotals() {
+        return new Totals(totalBytes.get(), totalFileCount.get(), totalFolderCount.get(), incompleteCount.get() == 0);
+    }
+
+    /**
+     * Stops all walks, the calculator can be used again with a new selection
+     */
+    public void cancel() {
+        for (Walk walk : walks.values())
+            stop(walk);
+        walks.clear();
+        mainHandler.removeCallbacks(update);
+        updatePosted.set(false);
+    }
+
+    private void submit(final Walk walk, final String path, final boolean isDirectory) {
+        walk.pending.incrementAndGet();
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isDirectory)
+                        walk(walk, path);
+                    else
+                        stat(walk, path);
+                } finally {
+                    if (walk.pending.decrementAndGet() == 0 && complete(walk))
+                        postUpdate(true);
+                }
+            }
+        });
+    }
+
+    private void stat(Walk walk, String path) {
+        if (walk.cancelled)
+            return;
+        FileEntry entry = storage.stat(path);
+        if (entry == null)
+            return;
+        if (entry.isDirectory())
+            walk(walk, path);
+        else if (entry.isFile())
+            add(walk, entry.length(), 1, 0);
+    }
+
+    private void walk(Walk walk, String folderPath) {
+        if (walk.cancelled)
+            return;
+        String canonicalPath = storage.getCanonicalPath(folderPath);
+        if (canonicalPath == null || !walk.visited.add(canonicalPath))
+            return;
+        Folder folder = readFolder(walk, folderPath);
+        if (folder == null || walk.cancelled)
+            return;
+        add(walk, folder.bytes, folder.fileCount, 1);
+        postUpdate(false);
+        for (String name : folder.subfolders)
+            submit(walk, storage.getChild(folderPath, name), true);
+    }
+
+    /**
+     * @return the direct content of the folder, from the cache if the folder is unchanged, or
+     * null if the walk was cancelled while listing it
+     */
+    private Folder readFolder(final Walk walk, String folderPath) {
+        long folderModified = storage.lastModified(folderPath);
+        synchronized (sFolders) {
+            Folder folder = sFolders.get(folderPath);
+            if (folder != null && folder.storage == storage && folder.folderModified == folderModified && folderModified != 0)
+                return folder;
+        }
+
+        final long[] bytes = new long[1];
+        final int[] fileCount = new int[1];
+        final List<String> subfolders = new ArrayList<>();
+        storage.list(folderPath, new StorageProvider.BatchVisitor() {
+            @Override
+            public boolean visit(List<FileEntry> batch) {
+                if (walk.cancelled)
+                    return false;
+                for (FileEntry entry : batch)
+                    if (entry.isDirectory())
+                        subfolders.add(entry.getName());
+                    else if (entry.isFile()) {
+                        bytes[0] += entry.length();
+                        fileCount[0]++;
+                    }
+                return true;
+            }
+        });
+        if (walk.cancelled)
+            return null;
+
+        Folder folder = new Folder(storage, folderModified, bytes[0], fileCount[0], subfolders.toArray(new String[subfolders.size()]));
+        if (folderModified != 0 && System.currentTimeMillis() - folderModified >= MTIME_GRANULARITY_MS)
+            synchronized (sFolders) {
+                sFolders.put(folderPath, folder);
+            }
+        return folder;
+    }
+
+    /**
+     * @param now true to deliver without waiting, for changes of the selection and completed walks
+     */
+    private void postUpdate(boolean now) {
+        if (now) {
+            mainHandler.removeCallbacks(update);
+            updatePosted.set(true);
+            mainHandler.post(update);
+        } else if (updatePosted.compareAndSet(false, true))
+            mainHandler.postDelayed(update, UPDATE_DELAY_MS);
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.isabsent.filepicker.listing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.storage.StorageProvider;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks the subtree under a folder with a fixed number of worker threads, one task per folder,
+ * and streams the entries whose name matches a query to the main thread. Every folder is entered
+ * once by its canonical path, so symbolic links cannot lead the walk into a cycle.
+ * <p>
+ * Matches are delivered in a {@link CompactListing} whose parent is the searched folder and whose
+ * names are paths relative to it.
+ */
+public class SubtreeSearch {
+    public static final int DEFAULT_WORKER_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long BATCH_DELAY_MS = 100;
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the matches found since the last call
+         */
+        void onMatchesFound(CompactListing batch);
+
+        /**
+         * Called on the main thread once the whole subtree is walked, not called if the search is cancelled
+         */
+        void onSearchFinished(Stats stats);
+    }
+
+    /**
+     * Figures of a completed walk, meant for tuning the number of workers
+     */
+    public static class Stats {
+        public final int workerCount;
+        public final int folderCount;
+        public final long entryCount;
+        public final int matchCount;
+        public final long elapsedMs;
+
+        Stats(int workerCount, int folderCount, long entryCount, int matchCount, long elapsedMs) {
+            this.workerCount = workerCount;
+            this.folderCount = folderCount;
+            this.entryCount = entryCount;
+            this.matchCount = matchCount;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public long getEntriesPerSecond() {
+            return elapsedMs > 0 ? entryCount * 1000 / elapsedMs : entryCount;
+        }
+
+        @Override
+        public String toString() {
+            return entryCount + " entries in " + folderCount + " folders, " + matchCount + " matches, "
+                    + elapsedMs + " ms with " + workerCount + " workers (" + getEntriesPerSecond() + " entries/s)";
+        }
+    }
+
+    private final StorageProvider storage;
+    private final String root;
+    private final String query;
+    private final boolean matchFiles;
+    private final boolean matchFolders;
+    private final int workerCount;
+    private final Callback callback;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger folderCount = new AtomicInteger();
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicInteger matchCount = new AtomicInteger();
+    private volatile boolean cancelled;
+    private long startedAt;
+    private CompactListing batch;
+
+    private final Runnable postBatch = new Runnable() {
+        @Override
+        public void run() {
+            CompactListing matches = takeBatch();
+            if (!cancelled && matches != null)
+                callback.onMatchesFound(matches);
+        }
+    };
+
+    /**
+     * @param query       normalized query, see {@link FilterIndex#normalize}
+     * @param workerCount number of threads walking the subtree
+     */
+    public SubtreeSearch(StorageProvider storage, String folderPath, String query, boolean matchFiles, boolean matchFolders,
+                         int workerCount, Callback callback) {
+        this.storage = storage;
+        root = folderPath;
+        this.query = query;
+        this.matchFiles = matchFiles;
+        this.matchFolders = matchFolders;
+        this.workerCount = workerCount;
+        this.callback = callback;
+        executor = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "FilePickerSearch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void start() {
+        startedAt = SystemClock.elapsedRealtime();
+        submit(root, null);
+    }
+
+    /**
+     * Stops the walk, workers leave the folder they are reading at the next entry
+     */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void submit(final String folderPath, final String relativePath) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        walk(folderPath, relativePath);
+                    } finally {
+                        if (pending.decrementAndGet() == 0)
+                            finish();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {//Cancelled
+            pending.decrementAndGet();
+        }
+    }
+
+    private void walk(final String folderPath, final String relativePath) {
+        if (cancelled)
+            return;
+        String canonicalPath = storage.getCanonicalPath(folderPath);
+        if (canonicalPath == null || !visited.add(canonicalPath))
+            return;
+        folderCount.incrementAndGet();
+
+        final long[] count = new long[1];
+        storage.list(folderPath, new StorageProvider.BatchVisitor() {
+            @Override
+            public boolean visit(List<FileEntry> batch) {
+                for (FileEntry entry : batch) {
+                    if (cancelled)
+                        return false;
+                    count[0]++;
+                    String name = entry.getName();
+                    boolean isDirectory = entry.isDirectory();
+                    boolean matches = (isDirectory ? matchFolders : matchFiles && entry.isFile()) && FilterIndex.find(name, query) >= 0;
+                    if (isDirectory || matches) {
+                        String path = relativePath == null ? name : relativePath + '/' + name;
+                        if (matches)
+                            addMatch(path, isDirectory, entry.isFile());
+                        if (isDirectory)
+                            submit(storage.getChild(folderPath, name), path);
+                    }
+                }
+                return true;
+            }
+        });
+        entryCount.addAndGet(count[0]);
+    }
+
+    private synchronized void addMatch(String path, boolean isDirectory, boolean isFile) {
+        matchCount.incrementAndGet();
+        if (batch == null) {
+            batch = new CompactListing(root, 16);
+            mainHandler.postDelayed(postBatch, BATCH_DELAY_MS);
+        }
+        batch.add(path, isDirectory, isFile);
+    }
+
+    private synchronized CompactListing takeBatch() {
+        CompactListing matches = batch;
+        batch = null;
+        return matches;
+    }
+
+    private void finish() {
+        executor.shutdown();
+        final Stats stats = new Stats(workerCount, folderCount.get(), entryCount.get(), matchCount.get(),
+                SystemClock.elapsedRealtime() - startedAt);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled)
+                    return;
+                mainHandler.removeCallbacks(postBatch);
+                postBatch.run();
+                callback.onSearchFinished(stats);
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.isabsent.filepicker.metrics;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+/**
+ * Timings of showing one folder, from the navigation to the first frame of its list. Phases are
+ * measured on whichever thread runs them and each is emitted as an {@link Trace} section, so they
+ * also show up in system traces.
+ * <p>
+ * Instances exist only while a {@link PickerMetrics.Listener} is installed; code paths take a null
+ * instance and skip measuring through the static {@link #begin} and {@link #end}.
+ */
+public class FolderMetrics {
+    /** Reading the entries of the folder, near zero when served from the listing cache */
+    public static final int ENUMERATE = 0;
+    /** Dropping the entries the dialog does not show, such as files in folder only mode */
+    public static final int FILTER = 1;
+    public static final int SORT = 2;
+    /** Packing the entries into the compact listing */
+    public static final int BUILD = 3;
+    /** Creating the row handles of the adapter */
+    public static final int ITEMS = 4;
+    /** Handing the listing to the adapter, including {@link #ITEMS} */
+    public static final int ADAPTER = 5;
+    private static final int PHASE_COUNT = 6;
+    private static final String[] SECTIONS = {"FilePicker.enumerate", "FilePicker.filter", "FilePicker.sort",
+            "FilePicker.build", "FilePicker.items", "FilePicker.adapter"};
+
+    public final String folderPath;
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private final long[] phaseStartedAt = new long[PHASE_COUNT];
+    private final long[] durations = new long[PHASE_COUNT];
+    private volatile boolean fromCache;
+    private volatile int entryCount;
+    private volatile int shownCount;
+    private long firstFrameMs = -1;
+
+    public FolderMetrics(String folderPath) {
+        this.folderPath = folderPath;
+    }
+
+    public static void begin(FolderMetrics metrics, int phase) {
+        if (metrics == null)
+            return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection(SECTIONS[phase]);
+        metrics.phaseStartedAt[phase] = System.nanoTime();
+    }
+
+    public static void end(FolderMetrics metrics, int phase) {
+        if (metrics == null)
+            return;
+        metrics.durations[phase] += System.nanoTime() - metrics.phaseStartedAt[phase];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.endSection();
+    }
+
+    /**
+     * @param entryCount number of entries in the folder
+     * @param fromCache  true if the entries came from the listing cache
+     */
+    public static void setEntryCount(FolderMetrics metrics, int entryCount, boolean fromCache) {
+        if (metrics != null) {
+            metrics.entryCount = entryCount;
+            metrics.fromCache = fromCache;
+        }
+    }
+
+    public static void setShownCount(FolderMetrics metrics, int shownCount) {
+        if (metrics != null)
+            metrics.shownCount = shownCount;
+    }
+
+    /**
+     * Called when the first frame showing the listing is about to be drawn
+     */
+    void onFirstFrame() {
+        firstFrameMs = SystemClock.elapsedRealtime() - startedAt;
+    }
+
+    /**
+     * @param phase one of {@link #ENUMERATE}, {@link #FILTER}, {@link #SORT}, {@link #BUILD}, {@link #ITEMS}, {@link #ADAPTER}
+     */
+    public long getMs(int phase) {
+        return durations[phase] / 1000000;
+    }
+
+    /**
+     * @return time from the navigation to the first frame of the list, or -1 if it was not drawn
+     */
+    public long getFirstFrameMs() {
+        return firstFrameMs;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return number of rows in the list, fewer than entries if some are not shown
+     */
+    public int getShownCount() {
+        return shownCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(folderPath).append(": ").append(entryCount).append(" entries, ")
+                .append(shownCount).append(" shown").append(fromCache ? " (cached)" : "");
+        for (int phase = 0; phase < PHASE_COUNT; phase++)
+            text.append(", ").append(SECTIONS[phase].substring(SECTIONS[phase].indexOf('.') + 1)).append(' ')
+                    .append(getMs(phase)).append(" ms");
+        return text.append(", first frame ").append(firstFrameMs).append(" ms").toString();
+    }
+}
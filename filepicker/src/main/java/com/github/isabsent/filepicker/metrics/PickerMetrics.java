@@ -0,0 +1,140 @@
+package com.github.isabsent.filepicker.metrics;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Performance figures of the picker for an app to log or upload. A listener is installed either
+ * for all dialogs with {@link #setListener}, for the dialogs of one host by implementing
+ * {@link Listener} in the activity, like the other dialog callbacks, or for single dialogs by
+ * registering it with {@link #register} and naming it with
+ * {@link com.github.isabsent.filepicker.SimpleFilePickerDialog#metrics}. Every installed listener
+ * gets the figures of a dialog; nothing is measured while none is installed.
+ */
+public class PickerMetrics {
+    private static volatile Listener sListener;
+    private static final Map<String, Listener> sListeners = new HashMap<>();
+
+    /**
+     * All methods are called on the main thread
+     */
+    public interface Listener {
+        /**
+         * Called once the first frame of the list of a folder is drawn
+         */
+        void onFolderShown(String dialogTag, FolderMetrics metrics);
+
+        /**
+         * Called when the filter result for the typed text is shown
+         *
+         * @param latencyMs time from the keystroke to the result, including the pause waited
+         *                  for further keystrokes
+         */
+        void onFilterApplied(String dialogTag, int queryLength, int matchCount, long latencyMs);
+
+        /**
+         * Called when the dialog leaves a folder or is dismissed
+         *
+         * @param bindCount number of times a row was bound while the folder was shown
+         */
+        void onFolderLeft(String dialogTag, String folderPath, int bindCount);
+    }
+
+    private PickerMetrics() {
+    }
+
+    /**
+     * Installs the listener for all dialogs, null to remove it
+     */
+    public static void setListener(Listener listener) {
+        sListener = listener;
+    }
+
+    public static Listener getListener() {
+        return sListener;
+    }
+
+    /**
+     * Makes a listener available to dialogs built with {@link com.github.isabsent.filepicker.SimpleFilePickerDialog#metrics}.
+     * Register it before a dialog is restored, e.g. in {@link android.app.Application#onCreate}.
+     *
+     * @param listener listener for the dialogs naming it, null to remove it
+     */
+    public static synchronized void register(String name, Listener listener) {
+        if (listener != null)
+            sListeners.put(name, listener);
+        else
+            sListeners.remove(name);
+    }
+
+    /**
+     * @return the listener registered under the name, or null
+     */
+    public static synchronized Listener get(String name) {
+        return sListeners.get(name);
+    }
+
+    /**
+     * @return true if figures are wanted by the host, the dialog or the global listener
+     */
+    public static boolean isEnabled(Listener host, Listener dialog) {
+        return host != null || dialog != null || sListener != null;
+    }
+
+    /**
+     * Reports the metrics to the listeners once the view draws its next frame
+     *
+     * @param host   listener implemented by the activity, or null
+     * @param dialog listener the dialog was built with, or null
+     */
+    public static void reportOnFirstFrame(final Listener host, final Listener dialog, final String dialogTag,
+                                          final FolderMetrics metrics, final View view) {
+        if (view == null) {
+            folderShown(host, dialog, dialogTag, metrics);
+            return;
+        }
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                metrics.onFirstFrame();
+                folderShown(host, dialog, dialogTag, metrics);
+                return true;
+            }
+        });
+    }
+
+    private static void folderShown(Listener host, Listener dialog, String dialogTag, FolderMetrics metrics) {
+        Listener global = sListener;
+        if (host != null)
+            host.onFolderShown(dialogTag, metrics);
+        if (dialog != null && dialog != host)
+            dialog.onFolderShown(dialogTag, metrics);
+        if (global != null && global != host && global != dialog)
+            global.onFolderShown(dialogTag, metrics);
+    }
+
+    public static void filterApplied(Listener host, Listener dialog, String dialogTag, int queryLength, int matchCount,
+                                     long latencyMs) {
+        Listener global = sListener;
+        if (host != null)
+            host.onFilterApplied(dialogTag, queryLength, matchCount, latencyMs);
+        if (dialog != null && dialog != host)
+            dialog.onFilterApplied(dialogTag, queryLength, matchCount, latencyMs);
+        if (global != null && global != host && global != dialog)
+            global.onFilterApplied(dialogTag, queryLength, matchCount, latencyMs);
+    }
+
+    public static void folderLeft(Listener host, Listener dialog, String dialogTag, String folderPath, int bindCount) {
+        Listener global = sListener;
+        if (host != null)
+            host.onFolderLeft(dialogTag, folderPath, bindCount);
+        if (dialog != null && dialog != host)
+            dialog.onFolderLeft(dialogTag, folderPath, bindCount);
+        if (global != null && global != host && global != dialog)
+            global.onFolderLeft(dialogTag, folderPath, bindCount);
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.isabsent.filepicker.result;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-process store for selections too large to travel in a result {@link android.os.Bundle}.
+ * The bundle carries only a handle, which stays small however many entries are selected. The
+ * most recent results are kept, so a handle resolves to nothing after process death or once
+ * several newer results were stored.
+ */
+public class ResultStore {
+    private static final int MAX_RESULTS = 4;
+
+    private static final Map<String, SelectionResult> sResults = new LinkedHashMap<String, SelectionResult>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SelectionResult> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+
+    private ResultStore() {
+    }
+
+    /**
+     * @return the handle of the stored result
+     */
+    public static synchronized String put(SelectionResult result) {
+        String handle = UUID.randomUUID().toString();
+        sResults.put(handle, result);
+        return handle;
+    }
+
+    /**
+     * @return the result, or null if it is no longer kept
+     */
+    public static synchronized SelectionResult get(String handle) {
+        return handle != null ? sResults.get(handle) : null;
+    }
+
+    public static synchronized void release(String handle) {
+        sResults.remove(handle);
+    }
+}
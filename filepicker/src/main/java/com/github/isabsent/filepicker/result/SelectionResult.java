@@ -0,0 +1,149 @@
+package com.github.isabsent.filepicker.result;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entries checked in a dialog, in the compact form of a {@link CompactListing}: one shared
+ * parent path, the names packed into a single char array, and type, size and modification time
+ * in flat arrays. Sizes and times are those the picker had read, so callers need not stat every
+ * path again; {@link #UNKNOWN} marks values it had not read.
+ */
+public class SelectionResult implements Parcelable {
+    public static final long UNKNOWN = CompactListing.UNKNOWN;
+    private static final byte DIRECTORY = 1;
+    private static final byte FILE = 2;
+
+    private final String parent;
+    private final char[] names;
+    private final int[] offsets;
+    private final byte[] types;
+    private final long[] lengths;
+    private final long[] lastModified;
+
+    /**
+     * @param indices rows of the listing, in the order they are returned
+     */
+    public static SelectionResult of(CompactListing listing, List<Integer> indices) {
+        int size = indices.size();
+        int[] offsets = new int[size + 1];
+        byte[] types = new byte[size];
+        long[] lengths = new long[size];
+        long[] lastModified = new long[size];
+        StringBuilder names = new StringBuilder(size * 12);
+        for (int i = 0; i < size; i++) {
+            int index = indices.get(i);
+            names.append(listing.getName(index));
+            offsets[i + 1] = names.length();
+            types[i] = (byte) ((listing.isDirectory(index) ? DIRECTORY : 0) | (listing.isFile(index) ? FILE : 0));
+            lengths[i] = listing.getLength(index);
+            lastModified[i] = listing.getLastModified(index);
+        }
+        char[] pool = new char[names.length()];
+        names.getChars(0, pool.length, pool, 0);
+        return new SelectionResult(listing.getParent(), pool, offsets, types, lengths, lastModified);
+    }
+
+    private SelectionResult(String parent, char[] names, int[] offsets, byte[] types, long[] lengths, long[] lastModified) {
+        this.parent = parent;
+        this.names = names;
+        this.offsets = offsets;
+        this.types = types;
+        this.lengths = lengths;
+        this.lastModified = lastModified;
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    /**
+     * @return name of the entry, a path relative to the parent for subtree search results
+     */
+    public String getName(int index) {
+        return new String(names, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    public String getPath(int index) {
+        String name = getName(index);
+        return parent.endsWith("/") ? parent + name : parent + '/' + name;
+    }
+
+    public boolean isDirectory(int index) {
+        return (types[index] & DIRECTORY) != 0;
+    }
+
+    public boolean isFile(int index) {
+        return (types[index] & FILE) != 0;
+    }
+
+    public long getLength(int index) {
+        return lengths[index];
+    }
+
+    public long getLastModified(int index) {
+        return lastModified[index];
+    }
+
+    /**
+     * @return full paths of all entries, as many strings as entries
+     */
+    public ArrayList<String> getPaths() {
+        ArrayList<String> paths = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++)
+            paths.add(getPath(i));
+        return paths;
+    }
+
+    /**
+     * @return rough number of bytes the result takes in a parcel
+     */
+    public long estimateParcelSize() {
+        return 2L * parent.length() + 2L * names.length + 4L * offsets.length + types.length + 16L * types.length + 32;
+    }
+
+    private SelectionResult(Parcel in) {
+        parent = in.readString();
+        names = in.createCharArray();
+        offsets = in.createIntArray();
+        types = in.createByteArray();
+        lengths = in.createLongArray();
+        lastModified = in.createLongArray();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(parent);
+        dest.writeCharArray(names);
+        dest.writeIntArray(offsets);
+        dest.writeByteArray(types);
+        dest.writeLongArray(lengths);
+        dest.writeLongArray(lastModified);
+    }
+
+    public static final Creator<SelectionResult> CREATOR = new Creator<SelectionResult>() {
+        @Override
+        public SelectionResult createFromParcel(Parcel in) {
+            return new SelectionResult(in);
+        }
+
+        @Override
+        public SelectionResult[] newArray(int size) {
+            return new SelectionResult[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.isabsent.filepicker.storage;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+import com.github.isabsent.filepicker.listing.DirectoryEnumerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folders of the file system under a root, such as external storage or the private files of the
+ * app. Entries are read by the {@link DirectoryEnumerator} of the device.
+ */
+public class FileStorageProvider extends StorageProvider {
+    private static final int BATCH_SIZE = 256;
+
+    private final String root;
+
+    public FileStorageProvider(File root) {
+        this.root = root.getAbsolutePath();
+    }
+
+    @Override
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Groups the entries of an enumeration into batches
+     */
+    private static class Batcher implements DirectoryEnumerator.Visitor {
+        final BatchVisitor visitor;
+        List<FileEntry> batch = new ArrayList<>(BATCH_SIZE);
+        boolean stopped;
+
+        Batcher(BatchVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public boolean visit(FileEntry entry) {
+            if (Thread.currentThread().isInterrupted()) {//Every entry costs a stat, do not wait for the batch
+                stopped = true;
+                return false;
+            }
+            batch.add(entry);
+            if (batch.size() == BATCH_SIZE) {
+                stopped = !visitor.visit(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+            return !stopped;
+        }
+    }
+
+    @Override
+    public void list(String folderPath, BatchVisitor visitor) {
+        Batcher batcher = new Batcher(visitor);
+        DirectoryEnumerator.getInstance().enumerate(new File(folderPath), batcher);
+        if (!batcher.stopped && batcher.batch.size() > 0)
+            visitor.visit(batcher.batch);
+    }
+
+    @Override
+    public FileEntry stat(String path) {
+        File file = new File(path);
+        if (!file.exists())
+            return null;
+        boolean isDirectory = file.isDirectory();
+        return new FileEntry(file, isDirectory, !isDirectory && file.isFile(), file.length(), file.lastModified());
+    }
+
+    @Override
+    public long lastModified(String folderPath) {
+        return new File(folderPath).lastModified();
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public String getCanonicalPath(String folderPath) {
+        try {
+            return new File(folderPath).getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
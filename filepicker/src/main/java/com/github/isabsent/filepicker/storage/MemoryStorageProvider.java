@@ -0,0 +1,148 @@
+package com.github.isabsent.filepicker.storage;
+
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folder tree held in memory, for tests and demos that should not depend on the files of the
+ * device. Adding or removing an entry updates the modification time of its folder, as a file
+ * system does.
+ */
+public class MemoryStorageProvider extends StorageProvider {
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static class Node {
+        final boolean isDirectory;
+        final long length;
+        long lastModified;
+        final Set<String> children;//Names in the order they were added
+
+        Node(boolean isDirectory, long length, long lastModified) {
+            this.isDirectory = isDirectory;
+            this.length = length;
+            this.lastModified = lastModified;
+            children = isDirectory ? new LinkedHashSet<String>() : null;
+        }
+    }
+
+    private final String root;
+    private final int batchSize;
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    public MemoryStorageProvider(String root) {
+        this(root, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize number of entries a listing delivers at once
+     */
+    public MemoryStorageProvider(String root, int batchSize) {
+        this.root = root;
+        this.batchSize = batchSize;
+        nodes.put(root, new Node(true, 0, System.currentTimeMillis()));
+    }
+
+    @Override
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * Adds a folder, and the folders above it that are missing
+     */
+    public synchronized void addFolder(String path, long lastModified) {
+        add(path, new Node(true, 0, lastModified));
+    }
+
+    /**
+     * Adds a file, and the folders above it that are missing
+     */
+    public synchronized void addFile(String path, long length, long lastModified) {
+        add(path, new Node(false, length, lastModified));
+    }
+
+    /**
+     * Removes an entry, a folder with everything below it
+     */
+    public synchronized void remove(String path) {
+        String parent = getParent(path);
+        Node node = nodes.get(path);
+        if (node == null || parent == null)
+            return;
+        removeTree(path, node);
+        Node folder = nodes.get(parent);
+        folder.children.remove(getName(path));
+        folder.lastModified = System.currentTimeMillis();
+    }
+
+    @Override
+    public void list(String folderPath, BatchVisitor visitor) {
+        List<FileEntry> entries;
+        synchronized (this) {
+            Node folder = nodes.get(folderPath);
+            if (folder == null || !folder.isDirectory)
+                return;
+            entries = new ArrayList<>(folder.children.size());
+            for (String name : folder.children) {
+                String path = getChild(folderPath, name);
+                entries.add(toEntry(path, nodes.get(path)));
+            }
+        }
+        for (int from = 0; from < entries.size(); from += batchSize)
+            if (!visitor.visit(new ArrayList<>(entries.subList(from, Math.min(from + batchSize, entries.size())))))
+                return;
+    }
+
+    @Override
+    public synchronized FileEntry stat(String path) {
+        Node node = nodes.get(path);
+        return node != null ? toEntry(path, node) : null;
+    }
+
+    @Override
+    public synchronized long lastModified(String folderPath) {
+        Node node = nodes.get(folderPath);
+        return node != null ? node.lastModified : 0;
+    }
+
+    private void add(String path, Node node) {
+        String parent = getParent(path);
+        if (parent == null)
+            throw new IllegalArgumentException(path + " is not below " + root);
+        Node folder = nodes.get(parent);
+        if (folder == null) {
+            add(parent, new Node(true, 0, node.lastModified));
+            folder = nodes.get(parent);
+        } else if (!folder.isDirectory)
+            throw new IllegalArgumentException(parent + " is a file");
+        Node old = nodes.get(path);
+        if (old != null)
+            removeTree(path, old);
+        nodes.put(path, node);
+        folder.children.add(getName(path));
+        folder.lastModified = System.currentTimeMillis();
+    }
+
+    private void removeTree(String path, Node node) {
+        nodes.remove(path);
+        if (node.isDirectory)
+            for (String name : node.children) {
+                String child = getChild(path, name);
+                removeTree(child, nodes.get(child));
+            }
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private FileEntry toEntry(String path, Node node) {
+        return new FileEntry(this, path, getName(path), node.isDirectory, !node.isDirectory, node.length, node.lastModified);
+    }
+}
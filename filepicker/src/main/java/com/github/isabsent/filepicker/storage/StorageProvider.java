@@ -0,0 +1,124 @@
+package com.github.isabsent.filepicker.storage;
+
+import android.os.Environment;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of the folders the picker browses. The dialog and its loaders reach storage only through
+ * a provider, so a backend that is slow per call, such as a Storage Access Framework tree, can
+ * answer a whole batch of entries at once and cache behind it.
+ * <p>
+ * Paths are absolute and separated by '/'. Providers are registered under a name, which the
+ * dialog keeps in its arguments; the {@link FileStorageProvider} on external storage is
+ * available as {@link #FILE} without registering.
+ */
+public abstract class StorageProvider {
+    public static final String FILE = "file";
+
+    private static final Map<String, StorageProvider> sProviders = new HashMap<>();
+
+    public interface BatchVisitor {
+        /**
+         * @param batch entries of the folder in the order of the backend, not used by the
+         *              provider afterwards
+         * @return false to stop the listing
+         */
+        boolean visit(List<FileEntry> batch);
+    }
+
+    /**
+     * Makes a provider available to dialogs built with {@link com.github.isabsent.filepicker.SimpleFilePickerDialog#storage}.
+     * Register it before a dialog is restored, e.g. in {@link android.app.Application#onCreate}.
+     */
+    public static synchronized void register(String name, StorageProvider provider) {
+        sProviders.put(name, provider);
+    }
+
+    /**
+     * @throws IllegalStateException if no provider is registered under the name
+     */
+    public static synchronized StorageProvider get(String name) {
+        StorageProvider provider = sProviders.get(name);
+        if (provider == null && FILE.equals(name)) {
+            provider = new FileStorageProvider(Environment.getExternalStorageDirectory());
+            sProviders.put(FILE, provider);
+        }
+        if (provider == null)
+            throw new IllegalStateException("No storage provider registered as " + name);
+        return provider;
+    }
+
+    /**
+     * @return the topmost folder the user can reach
+     */
+    public abstract String getRoot();
+
+    /**
+     * Calls the visitor with the entries of a folder, each carrying its type, size and
+     * modification time. Nothing is visited if the folder cannot be read. Providers reading
+     * entries one at a time should stop early when the calling thread is interrupted.
+     */
+    public abstract void list(String folderPath, BatchVisitor visitor);
+
+    /**
+     * @return the entry at the path, or null if there is none
+     */
+    public abstract FileEntry stat(String path);
+
+    /**
+     * @return modification time of the folder, or 0 if the backend does not know it, in which
+     * case its listings are not cached
+     */
+    public abstract long lastModified(String folderPath);
+
+    /**
+     * @return true if paths of this provider are file system paths, which can be watched and
+     * decoded into thumbnails
+     */
+    public boolean isLocal() {
+        return false;
+    }
+
+    /**
+     * @return a path that is the same for every path leading to the folder, so a walk enters it
+     * once, or null if it cannot be resolved
+     */
+    public String getCanonicalPath(String folderPath) {
+        return folderPath;
+    }
+
+    /**
+     * @return true if the path is the root or below it
+     */
+    public boolean contains(String path) {
+        String root = getRoot();
+        return path != null && (path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + '/'));
+    }
+
+    /**
+     * @return the folder holding the path, or null at the root and outside of it
+     */
+    public String getParent(String path) {
+        if (!contains(path) || path.equals(getRoot()))
+            return null;
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "/";
+    }
+
+    public String getChild(String folderPath, String name) {
+        return folderPath.endsWith("/") ? folderPath + name : folderPath + '/' + name;
+    }
+
+    /**
+     * @return path of a row of a listing read from this provider
+     */
+    public String getPath(CompactListing listing, int index) {
+        return getChild(listing.getParent(), listing.getName(index));
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.isabsent.filepicker.thumbnail;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Thumbnails stored as JPEG files in a cache folder. A file is named after a digest of the source
+ * path, size, modification time and thumbnail size, so a changed source is never served. The
+ * folder is trimmed to its size limit by dropping the least recently used files.
+ */
+class DiskCache {
+    private static final int QUALITY = 85;
+
+    private final File folder;
+    private final long maxSize;
+    private long size = -1;//Summed up on first write
+
+    DiskCache(File folder, long maxSize) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cached thumbnail, or null if there is none
+     */
+    Bitmap get(String path, long length, long lastModified, int thumbnailSize) {
+        File file = new File(folder, key(path, length, lastModified, thumbnailSize));
+        if (!file.isFile())
+            return null;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap != null)
+            file.setLastModified(System.currentTimeMillis());//Order of use for trimming
+        return bitmap;
+    }
+
+    void put(String path, long length, long lastModified, int thumbnailSize, Bitmap bitmap) {
+        if (!folder.isDirectory() && !folder.mkdirs())
+            return;
+        String key = key(path, length, lastModified, thumbnailSize);
+        File temp = new File(folder, key + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, QUALITY, out))
+                return;
+        } catch (IOException e) {
+            return;
+        } finally {
+            if (out != null)
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+        }
+        File file = new File(folder, key);
+        if (temp.renameTo(file))
+            added(file.length());
+        else
+            temp.delete();
+    }
+
+    private synchronized void added(long length) {
+        if (size < 0) {
+            size = 0;
+            File[] files = folder.listFiles();
+            if (files != null)
+                for (File file : files)
+                    size += file.length();
+        } else
+            size += length;
+        if (size > maxSize)
+            trim(maxSize * 3 / 4);
+    }
+
+    private void trim(long targetSize) {
+        File[] files = folder.listFiles();
+        if (files == null)
+            return;
+        final long[] used = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            used[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return used[a] < used[b] ? -1 : used[a] == used[b] ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < order.length && size > targetSize; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete())
+                size -= length;
+        }
+    }
+
+    private static String key(String path, long length, long lastModified, int thumbnailSize) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest((path + '\n' + length + '\n' + lastModified + '\n' + thumbnailSize).getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(path.hashCode()) + '_' + length + '_' + lastModified + '_' + thumbnailSize;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.isabsent.filepicker.thumbnail;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of decoded thumbnails bounded by the bytes of their bitmaps. A thumbnail is served
+ * only while the size and modification time it was decoded for match the file.
+ */
+class MemoryCache {
+    private static class Thumbnail {
+        final Bitmap bitmap;
+        final long length;
+        final long lastModified;
+        final int bytes;
+
+        Thumbnail(Bitmap bitmap, long length, long lastModified) {
+            this.bitmap = bitmap;
+            this.length = length;
+            this.lastModified = lastModified;
+            bytes = bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+
+    private final LinkedHashMap<String, Thumbnail> thumbnails = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxSize;
+    private long size;
+
+    MemoryCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param length       size of the file, or -1 to accept any
+     * @param lastModified modification time of the file, or -1 to accept any
+     */
+    synchronized Bitmap get(String key, long length, long lastModified) {
+        Thumbnail thumbnail = thumbnails.get(key);
+        if (thumbnail == null)
+            return null;
+        if (length >= 0 && length != thumbnail.length || lastModified >= 0 && lastModified != thumbnail.lastModified) {
+            remove(key);
+            return null;
+        }
+        return thumbnail.bitmap;
+    }
+
+    synchronized void put(String key, Bitmap bitmap, long length, long lastModified) {
+        Thumbnail thumbnail = new Thumbnail(bitmap, length, lastModified);
+        if (thumbnail.bytes > maxSize)
+            return;
+        remove(key);
+        thumbnails.put(key, thumbnail);
+        size += thumbnail.bytes;
+        trimToSize(maxSize);
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void trimToSize(long targetSize) {
+        Iterator<Map.Entry<String, Thumbnail>> iterator = thumbnails.entrySet().iterator();
+        while (size > targetSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Thumbnail thumbnail = thumbnails.remove(key);
+        if (thumbnail != null)
+            size -= thumbnail.bytes;
+    }
+}
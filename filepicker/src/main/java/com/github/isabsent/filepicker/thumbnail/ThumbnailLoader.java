@@ -0,0 +1,302 @@
+package com.github.isabsent.filepicker.thumbnail;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Square thumbnails of image and video files, decoded downsampled on a small pool of background
+ * threads, so that scrolling through a photo folder neither blocks the main thread nor saturates
+ * the storage. Decoded thumbnails are kept in a memory LRU bounded by bytes and in a disk cache
+ * keyed by path, size and modification time.
+ */
+public class ThumbnailLoader implements ComponentCallbacks2 {
+    public static final int DEFAULT_CONCURRENCY = 2;
+    private static final long DISK_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final String DISK_CACHE_FOLDER = "filepicker-thumbnails";
+    private static final long UNKNOWN = -1;
+
+    private static ThumbnailLoader sInstance;
+
+    public interface Callback {
+        /**
+         * Called on the main thread, not called if the request is cancelled or nothing could be decoded
+         */
+        void onThumbnailLoaded(Request request, Bitmap bitmap);
+    }
+
+    /**
+     * Counters since the loader was created, for tuning cache sizes and concurrency
+     */
+    public static class Stats {
+        public final long memoryHits;
+        public final long diskHits;
+        public final long decodeCount;
+        public final long failureCount;
+        public final long decodeMs;
+
+        Stats(long memoryHits, long diskHits, long decodeCount, long failureCount, long decodeMs) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.decodeCount = decodeCount;
+            this.failureCount = failureCount;
+            this.decodeMs = decodeMs;
+        }
+
+        /**
+         * @return share of thumbnails served from memory or disk instead of decoding the file
+         */
+        public float getHitRate() {
+            long total = memoryHits + diskHits + decodeCount;
+            return total > 0 ? (float) (memoryHits + diskHits) / total : 0;
+        }
+
+        public long getAverageDecodeMs() {
+            return decodeCount > 0 ? decodeMs / decodeCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return memoryHits + " memory hits, " + diskHits + " disk hits, " + decodeCount + " decodes ("
+                    + getAverageDecodeMs() + " ms on average), " + failureCount + " failures";
+        }
+    }
+
+    public class Request implements Runnable {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final int size;
+        private final Callback callback;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Request(String path, long length, long lastModified, int size, Callback callback) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.callback = callback;
+        }
+
+        /**
+         * Drops the request, a decode already running is finished and cached but not delivered
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+            final Bitmap bitmap = loadThumbnail(path, length, lastModified, size);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled && bitmap != null)
+                        callback.onThumbnailLoaded(Request.this, bitmap);
+                }
+            });
+        }
+    }
+
+    private final MemoryCache memoryCache;
+    private final DiskCache diskCache;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            Context application = context.getApplicationContext();
+            sInstance = new ThumbnailLoader(new File(application.getCacheDir(), DISK_CACHE_FOLDER),
+                    Runtime.getRuntime().maxMemory() / 8, DISK_CACHE_BYTES, DEFAULT_CONCURRENCY);
+            application.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    ThumbnailLoader(File diskCacheFolder, long maxMemoryBytes, long maxDiskBytes, int concurrency) {
+        memoryCache = new MemoryCache(maxMemoryBytes);
+        diskCache = new DiskCache(diskCacheFolder, maxDiskBytes);
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "FilePickerThumbnail");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return true if the name has the extension of an image or video type
+     */
+    public static boolean isSupported(String name) {
+        String mimeType = getMimeType(name);
+        return mimeType != null && (mimeType.startsWith("image/") || mimeType.startsWith("video/"));
+    }
+
+    /**
+     * Looks a thumbnail up in memory only, meant for the main thread
+     *
+     * @param length       size of the file, or -1 if not known
+     * @param lastModified modification time of the file, or -1 if not known
+     */
+    public Bitmap getCached(String path, long length, long lastModified, int size) {
+        Bitmap bitmap = memoryCache.get(memoryKey(path, size), length, lastModified);
+        if (bitmap != null)
+            memoryHits.incrementAndGet();
+        return bitmap;
+    }
+
+    /**
+     * Queues loading a thumbnail from the disk cache or decoding it from the file
+     *
+     * @param size edge of the square thumbnail in pixels
+     */
+    public Request load(String path, long length, long lastModified, int size, Callback callback) {
+        Request request = new Request(path, length, lastModified, size, callback);
+        request.future = executor.submit(request);
+        return request;
+    }
+
+    /**
+     * Sets how many thumbnails are decoded at the same time
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+    }
+
+    public void setMaxMemorySize(long maxSize) {
+        memoryCache.setMaxSize(maxSize);
+    }
+
+    public Stats getStats() {
+        return new Stats(memoryHits.get(), diskHits.get(), decodeCount.get(), failureCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(decodeNanos.get()));
+    }
+
+    private Bitmap loadThumbnail(String path, long length, long lastModified, int size) {
+        File file = new File(path);
+        if (length == UNKNOWN)
+            length = file.length();
+        if (lastModified == UNKNOWN)
+            lastModified = file.lastModified();
+        String key = memoryKey(path, size);
+        Bitmap bitmap = memoryCache.get(key, length, lastModified);
+        if (bitmap != null) {
+            memoryHits.incrementAndGet();
+            return bitmap;
+        }
+
+        bitmap = diskCache.get(path, length, lastModified, size);
+        if (bitmap != null)
+            diskHits.incrementAndGet();
+        else {
+            long startedAt = System.nanoTime();
+            bitmap = decode(path, size);
+            decodeNanos.addAndGet(System.nanoTime() - startedAt);
+            decodeCount.incrementAndGet();
+            if (bitmap == null) {
+                failureCount.incrementAndGet();
+                return null;
+            }
+            diskCache.put(path, length, lastModified, size, bitmap);
+        }
+        memoryCache.put(key, bitmap, length, lastModified);
+        return bitmap;
+    }
+
+    /**
+     * Decodes an image with the largest power of two subsampling that keeps it at least the
+     * thumbnail size, or takes the frame the media framework extracts from a video, and crops
+     * the result to the square thumbnail
+     */
+    private static Bitmap decode(String path, int size) {
+        String mimeType = getMimeType(path);
+        Bitmap bitmap;
+        if (mimeType != null && mimeType.startsWith("video/"))
+            bitmap = ThumbnailUtils.createVideoThumbnail(path, MediaStore.Images.Thumbnails.MINI_KIND);
+        else {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                return null;
+            int sampleSize = 1;
+            while (options.outWidth / (sampleSize * 2) >= size && options.outHeight / (sampleSize * 2) >= size)
+                sampleSize *= 2;
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            bitmap = BitmapFactory.decodeFile(path, options);
+        }
+        if (bitmap == null)
+            return null;
+        return ThumbnailUtils.extractThumbnail(bitmap, size, size, ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+    }
+
+    private static String getMimeType(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || name.indexOf(File.separatorChar, dot) >= 0)
+            return null;
+        return MimeTypeMap.getSingleton().getMimeTypeFromExtension(name.substring(dot + 1).toLowerCase());
+    }
+
+    private static String memoryKey(String path, int size) {
+        return size + ":" + path;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL)
+            memoryCache.trimToSize(0);
+        else if (level >= TRIM_MEMORY_RUNNING_MODERATE)
+            memoryCache.trimToSize(memoryCache.size() / 2);
+    }
+
+    @Override
+    public void onLowMemory() {
+        memoryCache.trimToSize(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.isabsent.filepicker.comparator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class NaturalSortKeyTest {
+    private static final String[] NAMES = {
+            "a", "A", "ab", "a b", "a-b", "a_b", "a.b", "ab-", "-ab", "b", "B.txt", "b.TXT", "file",
+            "file1", "file 1", "file-1", "File2", "file10", "file010", "file 10", "x(1)", "x[1]",
+            "résumé", "resume", "Résumé 2", "über", "zebra", "z~", "~z", "10", "9", "09 a", "9a"
+    };
+
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void asciiRanksAreBuiltForEnglish() {
+        assertNotNull(NaturalSortKey.buildAsciiRanks(Collator.getInstance(Locale.US), Locale.US));
+        assertNotNull(NaturalSortKey.buildAsciiRanks(Collator.getInstance(Locale.ENGLISH), Locale.ENGLISH));
+    }
+
+    @Test
+    public void orderMatchesCompareNatural() {
+        for (String s : NAMES)
+            for (String t : NAMES) {
+                int expected = Integer.signum(FileNameComparator.compareNatural(s.toLowerCase(), t.toLowerCase()));
+                int actual = Integer.signum(NaturalSortKey.of(s).compareTo(NaturalSortKey.of(t)));
+                assertEquals(s + " vs " + t, expected, actual);
+            }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.isabsent.filepicker.entity;
+
+import android.support.v4.util.Pair;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactListingTest {
+    private static final String PARENT = "/storage/emulated/0/DCIM/Camera";
+    private static final int ROW_COUNT = 10000;
+
+    @Test
+    public void idsStayUniqueAsRowsAreAdded() {
+        CompactListing listing = new CompactListing("/root", 0);
+        listing.add("a", false, true);
+        listing.add("a", false, true);
+        CompactListing batch = new CompactListing("/root", 2);
+        batch.add("a", false, true);
+        batch.add("b", true, false);
+        listing.addAll(batch);
+        listing.insert(1, new FileEntry(new File("/root/a"), false, true, 0, 0));
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < listing.size(); i++)
+            assertTrue("duplicate id at " + i, ids.add(listing.getId(i)));
+        assertEquals(5, ids.size());
+    }
+
+    @Test
+    public void indexOfIdFollowsInsertsAndRemovals() {
+        CompactListing listing = new CompactListing("/root", 0);
+        for (int i = 0; i < 1000; i++)
+            listing.add("file" + i, false, true);
+        listing.insert(0, new FileEntry(new File("/root/first"), true, false, 0, 0));
+        listing.removeAll(Collections.singleton("file500"));
+
+        for (int i = 0; i < listing.size(); i++)
+            assertEquals(i, listing.indexOfId(listing.getId(i)));
+        assertEquals(-1, listing.indexOfId(listing.getId(0) + 12345));
+    }
+
+    /**
+     * Compares a listed folder with the rows it replaced: for each entry a full path and a name
+     * string, an {@link Item} in a {@link SimpleFilePickerItem}, and a {@link Pair} with the boxed id
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void retainsSeveralTimesLessHeapThanRowObjects() {
+        String[] itemPaths = new String[ROW_COUNT];
+        String[] itemNames = new String[ROW_COUNT];
+        boolean[] isFiles = new boolean[ROW_COUNT];
+        Object[] data = new Object[ROW_COUNT];
+        Object[] dataAndIds = new Object[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            itemNames[i] = name(i);
+            itemPaths[i] = PARENT + '/' + itemNames[i];
+            isFiles[i] = i % 10 != 0;
+            SimpleFilePickerItem item = new SimpleFilePickerItem(new Item(itemNames[i], isFiles[i]), itemNames[i].hashCode());
+            data[i] = item;
+            dataAndIds[i] = new Pair<>(item.getItem(), item.getId());
+        }
+        long rowBytes = HeapLayout.deepSize(new Object[]{itemPaths, itemNames, isFiles, data, dataAndIds});
+
+        CompactListing listing = new CompactListing(PARENT, 0);
+        for (int i = 0; i < ROW_COUNT; i++)
+            listing.add(name(i), i % 10 == 0, i % 10 != 0);
+        listing.trimToSize();
+        long listingBytes = HeapLayout.deepSize(listing);
+
+        assertTrue("listing " + listingBytes / ROW_COUNT + " bytes per row, row objects " + rowBytes / ROW_COUNT,
+                listingBytes * 3 <= rowBytes);
+    }
+
+    private static String name(int i) {
+        return "IMG_2017" + (1000000 + i) + "_" + (i * 7919 % 1000000) + ".jpg";
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.isabsent.filepicker.entity;
+
+import com.github.isabsent.filepicker.comparator.NaturalSortKey;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class FileEntryTest {
+    private static final String PARENT = "/storage/emulated/0/DCIM/Camera";
+    private static final int ENTRY_COUNT = 1000;
+    private static final String[] WORDS = {"IMG_", "Screenshot ", "Отпуск ", "Über-", "holiday.", "写真"};
+
+    /**
+     * Entries as the listing cache keeps them: sorted by name, so with their name sort keys built
+     */
+    @Test
+    public void estimatedSizeCoversTheSortKeys() throws Exception {
+        List<FileEntry> entries = new ArrayList<>();
+        long estimate = 0;
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            String name = WORDS[i % WORDS.length] + i + (i % 3 == 0 ? ".jpg" : "");
+            FileEntry entry = new FileEntry(new File(PARENT, name), i % 7 == 0, i % 7 != 0, i, i);
+            entry.getNameKey();
+            entries.add(entry);
+            estimate += entry.estimateSize();
+        }
+        NaturalSortKey key = entries.get(0).getNameKey();
+        long measured = HeapLayout.deepSize(entries.toArray(), field(key, "collator"), field(key, "asciiRanks"));
+
+        assertTrue("estimate " + estimate / ENTRY_COUNT + " bytes per entry, measured " + measured / ENTRY_COUNT,
+                estimate >= measured && estimate <= 2 * measured);
+    }
+
+    private static Object field(Object object, String name) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.isabsent.filepicker.entity;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.text.CollationKey;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deep size of an object graph under one fixed layout: compressed references, 12 byte object
+ * and 16 byte array headers, 8 byte alignment, and strings backed by UTF-16 char arrays as on
+ * ART before Android 8. Unlike heap deltas around <code>System.gc()</code>, the result is the
+ * same on every run. Platform classes whose fields are closed to reflection on newer JDKs are
+ * sized from their public state.
+ */
+final class HeapLayout {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private HeapLayout() {
+    }
+
+    /**
+     * @param shared objects reachable from the root that are not counted, nor anything only they reach
+     */
+    static long deepSize(Object root, Object... shared) {
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        for (Object object : shared)
+            seen.put(object, Boolean.TRUE);
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (seen.put(object, Boolean.TRUE) == null)
+                size += shallowSize(object, pending);
+        }
+        return size;
+    }
+
+    private static long shallowSize(Object object, Deque<Object> pending) {
+        Class<?> type = object.getClass();
+        if (object instanceof String)
+            return align(OBJECT_HEADER + 2 * REFERENCE) + align(ARRAY_HEADER + 2L * ((String) object).length());
+        if (object instanceof Long)
+            return align(OBJECT_HEADER + 8);
+        if (object instanceof BitSet)
+            return align(OBJECT_HEADER + REFERENCE + 4 + 1) + align(ARRAY_HEADER + ((BitSet) object).size() / 8);
+        if (object instanceof File) {
+            pending.push(((File) object).getPath());
+            return align(OBJECT_HEADER + REFERENCE + 4);
+        }
+        if (object instanceof CollationKey) {//Source string and a string of the weights
+            pending.push(((CollationKey) object).getSourceString());
+            return align(OBJECT_HEADER + 2 * REFERENCE) + align(OBJECT_HEADER + 2 * REFERENCE)
+                    + align(ARRAY_HEADER + ((CollationKey) object).toByteArray().length);
+        }
+        if (object instanceof AtomicReferenceArray) {
+            AtomicReferenceArray<?> array = (AtomicReferenceArray<?>) object;
+            for (int i = 0; i < array.length(); i++)
+                if (array.get(i) != null)
+                    pending.push(array.get(i));
+            return align(OBJECT_HEADER + REFERENCE) + align(ARRAY_HEADER + (long) array.length() * REFERENCE);
+        }
+        if (type.isArray()) {
+            int length = java.lang.reflect.Array.getLength(object);
+            Class<?> component = type.getComponentType();
+            if (component.isPrimitive())
+                return align(ARRAY_HEADER + (long) length * width(component));
+            for (Object element : (Object[]) object)
+                if (element != null)
+                    pending.push(element);
+            return align(ARRAY_HEADER + (long) length * REFERENCE);
+        }
+
+        long size = OBJECT_HEADER;
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass())
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+                Class<?> fieldType = field.getType();
+                if (fieldType.isPrimitive()) {
+                    size += width(fieldType);
+                    continue;
+                }
+                size += REFERENCE;
+                field.setAccessible(true);
+                try {
+                    Object value = field.get(object);
+                    if (value != null)
+                        pending.push(value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        return align(size);
+    }
+
+    private static int width(Class<?> primitive) {
+        if (primitive == long.class || primitive == double.class)
+            return 8;
+        if (primitive == int.class || primitive == float.class)
+            return 4;
+        if (primitive == char.class || primitive == short.class)
+            return 2;
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
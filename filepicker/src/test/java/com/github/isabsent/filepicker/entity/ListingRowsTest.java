@@ -0,0 +1,52 @@
+package com.github.isabsent.filepicker.entity;
+
+import android.support.v4.util.Pair;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ListingRowsTest {
+    private static final int ROW_COUNT = 1000;
+    private static final int VISIBLE_ROWS = 20;
+
+    private static CompactListing createListing() {
+        CompactListing listing = new CompactListing("/root", 0);
+        for (int i = 0; i < ROW_COUNT; i++)
+            listing.add("IMG_" + i + ".jpg", false, true);
+        return listing;
+    }
+
+    @Test
+    public void rowsFollowTheListing() {
+        CompactListing listing = createListing();
+        ListingRows rows = new ListingRows(listing);
+        assertEquals(ROW_COUNT, rows.size());
+        listing.add("added", true, false);
+        rows.update();
+        assertEquals(ROW_COUNT + 1, rows.size());
+        assertEquals(listing.getId(ROW_COUNT), rows.getId(ROW_COUNT));
+        assertEquals("added", rows.get(ROW_COUNT).first.getLabel());
+        assertEquals(ROW_COUNT, rows.indexOf(rows.get(ROW_COUNT)));
+
+        ListingRows some = new ListingRows(listing, new int[]{3, 7}, 2);
+        assertEquals(2, some.size());
+        assertEquals(7, some.getIndex(1));
+        assertEquals(listing.getId(7), (long) some.get(1).second);
+    }
+
+    @Test
+    public void rowsReadAgainAreTheSameObjects() {
+        CompactListing listing = createListing();
+        ListingRows rows = new ListingRows(listing);
+        Pair<Item, Long> first = rows.get(0);
+        String label = first.first.getLabel();
+        for (int position = 1; position < VISIBLE_ROWS; position++)
+            rows.get(position);
+
+        assertSame(first, rows.get(0));
+        assertSame(label, rows.get(0).first.getLabel());
+        assertEquals(listing.getId(0), (long) rows.get(0).second);
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.isabsent.filepicker.storage;
+
+import com.github.isabsent.filepicker.entity.CompactListing;
+import com.github.isabsent.filepicker.entity.FileEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryStorageProviderTest {
+    private static final String ROOT = "/memory";
+
+    private MemoryStorageProvider storage;
+
+    @Before
+    public void setUp() {
+        storage = new MemoryStorageProvider(ROOT, 2);
+        storage.addFile(ROOT + "/photos/a.jpg", 100, 1000);
+        storage.addFile(ROOT + "/photos/b.jpg", 200, 2000);
+        storage.addFolder(ROOT + "/photos/album", 3000);
+    }
+
+    @Test
+    public void listsInBatchesWithAttributes() {
+        final List<FileEntry> entries = new ArrayList<>();
+        final int[] batchCount = new int[1];
+        storage.list(ROOT + "/photos", new StorageProvider.BatchVisitor() {
+            @Override
+            public boolean visit(List<FileEntry> batch) {
+                batchCount[0]++;
+                entries.addAll(batch);
+                return true;
+            }
+        });
+        assertEquals(2, batchCount[0]);
+        assertEquals(3, entries.size());
+        assertEquals("a.jpg", entries.get(0).getName());
+        assertEquals(ROOT + "/photos/a.jpg", entries.get(0).getPath());
+        assertEquals(100, entries.get(0).length());
+        assertTrue(entries.get(2).isDirectory());
+        assertNull(entries.get(0).getFile());
+    }
+
+    @Test
+    public void listingPathsAndEntriesGoThroughTheProvider() {
+        CompactListing listing = new CompactListing(ROOT + "/photos", 0);
+        listing.add("a.jpg", false, true);
+        listing.add("b.jpg", false, true);
+
+        assertEquals(ROOT + "/photos/b.jpg", storage.getPath(listing, 1));
+        FileEntry entry = listing.getEntry(storage, 1);
+        assertEquals(ROOT + "/photos/b.jpg", entry.getPath());
+        assertEquals(200, entry.length());//Not held by the listing, read from the provider
+        assertEquals(2000, entry.lastModified());
+    }
+
+    @Test
+    public void parentsAndChildrenStayInsideTheRoot() {
+        assertEquals(ROOT + "/photos", storage.getParent(ROOT + "/photos/a.jpg"));
+        assertNull(storage.getParent(ROOT));
+        assertEquals(ROOT + "/photos", storage.getChild(ROOT, "photos"));
+        storage.remove(ROOT + "/photos/a.jpg");
+        assertNull(storage.stat(ROOT + "/photos/a.jpg"));
+    }
+}